@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.benchmark;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.everit.osgi.dev.e4.plugin.m2e.packaging.ArtifactFileIndex;
+import org.everit.osgi.dev.e4.plugin.m2e.packaging.ProjectArtifacts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looks up artifact files from parallel threads like the workspace reader does during the
+ * artifact resolution of a dist. Half of the looked up artifacts are packaged workspace projects
+ * and the other half are third-party artifacts that are not in the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArtifactFileIndexBenchmark {
+
+  /**
+   * The position of a thread in the artifact array.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    int position;
+
+    @Setup
+    public void setUp() {
+      position = new Random().nextInt(LOOKUP_COUNT);
+    }
+  }
+
+  private static final int LOOKUP_COUNT = 1024;
+
+  private static final long SEED = 20110101L;
+
+  private static final String VERSION = "1.0.0-SNAPSHOT";
+
+  private static ProjectArtifacts createProjectArtifacts(final String groupId,
+      final String artifactId) {
+
+    Artifact artifact = new DefaultArtifact(groupId, artifactId, "", "jar", VERSION)
+        .setFile(new File(artifactId + "/target/" + artifactId + ".jar"));
+    Artifact sourcesArtifact = new DefaultArtifact(groupId, artifactId, "sources", "jar", VERSION)
+        .setFile(new File(artifactId + "/target/" + artifactId + "-sources.jar"));
+
+    return new ProjectArtifacts(artifact, Collections.singletonList(sourcesArtifact));
+  }
+
+  private static String groupIdOf(final int projectIndex) {
+    return "org.example.group" + (projectIndex % 10);
+  }
+
+  private final ArtifactFileIndex artifactFileIndex = new ArtifactFileIndex();
+
+  private final Artifact[] lookedUpArtifacts = new Artifact[LOOKUP_COUNT];
+
+  @Param({ "100", "10000" })
+  public int projectCount;
+
+  private Artifact nextArtifact(final Cursor cursor) {
+    Artifact artifact = lookedUpArtifacts[cursor.position];
+    cursor.position = (cursor.position + 1) % LOOKUP_COUNT;
+    return artifact;
+  }
+
+  /**
+   * Lookups without any modification of the index.
+   */
+  @Benchmark
+  @Threads(4)
+  public File read(final Cursor cursor) {
+    return artifactFileIndex.findArtifact(nextArtifact(cursor));
+  }
+
+  /**
+   * Lookups while a project is packaged again and again.
+   */
+  @Benchmark
+  @Group("readWhileWriting")
+  @GroupThreads(3)
+  public File readWhileWriting(final Cursor cursor) {
+    return artifactFileIndex.findArtifact(nextArtifact(cursor));
+  }
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < projectCount; i++) {
+      String groupId = groupIdOf(i);
+      String artifactId = "project" + i;
+      artifactFileIndex.put(groupId, artifactId, VERSION,
+          createProjectArtifacts(groupId, artifactId));
+    }
+
+    Random random = new Random(SEED);
+    for (int i = 0; i < LOOKUP_COUNT; i++) {
+      int projectIndex = random.nextInt(projectCount);
+      if (i % 2 == 0) {
+        lookedUpArtifacts[i] = new DefaultArtifact(groupIdOf(projectIndex),
+            "project" + projectIndex, "", "jar", VERSION);
+      } else {
+        lookedUpArtifacts[i] = new DefaultArtifact(groupIdOf(projectIndex),
+            "third-party" + projectIndex, "", "jar", "2.0.0");
+      }
+    }
+  }
+
+  /**
+   * Replaces the artifacts of a project like the packaging of a project does.
+   */
+  @Benchmark
+  @Group("readWhileWriting")
+  @GroupThreads(1)
+  public void writeWhileReading(final Cursor cursor) {
+    int projectIndex = cursor.position % projectCount;
+    cursor.position = (cursor.position + 1) % LOOKUP_COUNT;
+
+    String groupId = groupIdOf(projectIndex);
+    String artifactId = "project" + projectIndex;
+    artifactFileIndex.put(groupId, artifactId, VERSION,
+        createProjectArtifacts(groupId, artifactId));
+  }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.everit.osgi.dev.e4.plugin.util.DAGFlattener;
+import org.everit.osgi.dev.e4.plugin.util.DAGFlattener.KeyWithNodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Flattens synthetic dependency graphs. The nodes of the graphs are organized in layers and every
+ * node has dependencies only in the later layers, so the graphs are acyclic, they contain many
+ * shared dependencies like real dependency trees and their depth is the square root of the node
+ * count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DAGFlattenerBenchmark {
+
+  /**
+   * Node of a synthetic dependency graph.
+   */
+  static final class Node {
+
+    final List<Node> children = new ArrayList<>();
+
+    final int id;
+
+    Node(final int id) {
+      this.id = id;
+    }
+  }
+
+  private static final int MAX_EXTRA_PARENT_COUNT = 3;
+
+  private static final long SEED = 20110101L;
+
+  /**
+   * Creates a graph where every node except the root has one parent in the previous layer and
+   * some other parents in any of the previous layers.
+   *
+   * @param nodeCount
+   *          The number of nodes in the graph.
+   * @param random
+   *          The random generator that selects the parents.
+   * @return The root of the graph.
+   */
+  static Node createGraph(final int nodeCount, final Random random) {
+    Node[] nodes = new Node[nodeCount];
+    for (int i = 0; i < nodeCount; i++) {
+      nodes[i] = new Node(i);
+    }
+
+    int layerWidth = Math.max(1, (int) Math.sqrt(nodeCount));
+    for (int i = 1; i < nodeCount; i++) {
+      int layer = (i - 1) / layerWidth + 1;
+      int parentLayerStart = (layer == 1) ? 0 : (layer - 2) * layerWidth + 1;
+      int parentLayerEnd = (layer == 1) ? 1 : parentLayerStart + layerWidth;
+
+      Node node = nodes[i];
+      nodes[parentLayerStart + random.nextInt(parentLayerEnd - parentLayerStart)].children
+          .add(node);
+
+      int extraParentCount = random.nextInt(MAX_EXTRA_PARENT_COUNT + 1);
+      for (int j = 0; j < extraParentCount; j++) {
+        Node parent = nodes[random.nextInt(parentLayerEnd)];
+        if (!parent.children.contains(node)) {
+          parent.children.add(node);
+        }
+      }
+    }
+    return nodes[0];
+  }
+
+  private final DAGFlattener<Integer, Node> dagFlattener =
+      new DAGFlattener<>((node) -> node.id, (node) -> node.children);
+
+  @Param({ "10", "100", "1000", "10000" })
+  public int nodeCount;
+
+  private Node root;
+
+  @Benchmark
+  public List<KeyWithNodes<Integer, Node>> flatten() {
+    return dagFlattener.flatten(root);
+  }
+
+  @Setup
+  public void setUp() {
+    root = createGraph(nodeCount, new Random(SEED));
+  }
+
+}
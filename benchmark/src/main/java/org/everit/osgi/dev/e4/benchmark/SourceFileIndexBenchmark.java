@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.everit.osgi.dev.e4.plugin.m2e.packaging.SourceFileIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Walks generated project directory trees like the packager does when it decides whether a
+ * project is stale. The tree contains a build directory with the same amount of files as the
+ * sources that must be skipped by the walk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SourceFileIndexBenchmark {
+
+  private static final int FILES_PER_DIRECTORY = 20;
+
+  /**
+   * The age of the generated files, so their timestamps can be trusted by the index like in case
+   * of a project that was not edited recently.
+   */
+  private static final long FILE_AGE = TimeUnit.HOURS.toMillis(1);
+
+  private static void createFiles(final File directory, final String prefix, final int fileCount,
+      final long lastModified) throws IOException {
+
+    for (int i = 0; i < fileCount; i++) {
+      File subDirectory = new File(directory, "package" + (i / FILES_PER_DIRECTORY));
+      subDirectory.mkdirs();
+      File file = new File(subDirectory, prefix + i + ".java");
+      Files.write(file.toPath(), ("class " + prefix + i + " {\n}\n")
+          .getBytes(StandardCharsets.UTF_8));
+      file.setLastModified(lastModified);
+    }
+  }
+
+  private static void deleteRecursively(final Path path) throws IOException {
+    Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+
+      @Override
+      public FileVisitResult postVisitDirectory(final Path dir, final IOException exc)
+          throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+          throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private File baseDir;
+
+  private File buildDirectory;
+
+  @Param({ "100", "1000", "10000" })
+  public int fileCount;
+
+  private SourceFileIndex sourceFileIndex;
+
+  /**
+   * Creates a new index reusing the digests of the previous one like after a packaging.
+   */
+  @Benchmark
+  public SourceFileIndex create() {
+    return SourceFileIndex.create(baseDir, buildDirectory, sourceFileIndex);
+  }
+
+  /**
+   * Checks whether any file changed like the packager does before each launch.
+   */
+  @Benchmark
+  public boolean isChanged() {
+    return sourceFileIndex.isChanged(baseDir, buildDirectory);
+  }
+
+  /**
+   * Generates the directory tree and indexes it.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDirectory("eosgi-benchmark").toFile();
+    buildDirectory = new File(baseDir, "target");
+
+    long lastModified = System.currentTimeMillis() - FILE_AGE;
+    createFiles(new File(baseDir, "src/main/java"), "Source", fileCount, lastModified);
+    createFiles(new File(buildDirectory, "classes"), "Compiled", fileCount, lastModified);
+
+    sourceFileIndex = SourceFileIndex.create(baseDir, buildDirectory, null);
+    if (sourceFileIndex.isChanged(baseDir, buildDirectory)) {
+      throw new IllegalStateException("Freshly created index reports changes");
+    }
+  }
+
+  /**
+   * Deletes the generated directory tree.
+   */
+  @TearDown
+  public void tearDown() {
+    try {
+      deleteRecursively(baseDir.toPath());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
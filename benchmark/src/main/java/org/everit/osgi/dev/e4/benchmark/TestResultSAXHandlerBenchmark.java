@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.everit.osgi.dev.e4.plugin.testresult.TestResultSAXHandler;
+import org.everit.osgi.dev.e4.plugin.testresult.TestResultSummarizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.SAXException;
+
+/**
+ * Summarizes generated surefire test result files. Every twentieth test case has an error, the
+ * other tenth ones fail and every fiftieth is skipped. The summary is written to a writer that
+ * drops the characters, so only the parsing and the transformation are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestResultSAXHandlerBenchmark {
+
+  /**
+   * Writer that counts the written characters instead of storing them.
+   */
+  private static final class CountingWriter extends Writer {
+
+    long count;
+
+    @Override
+    public Writer append(final CharSequence csq) {
+      count += (csq != null) ? csq.length() : 0;
+      return this;
+    }
+
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+
+    @Override
+    public void flush() {
+      // Nothing to flush
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) {
+      count += len;
+    }
+  }
+
+  private static String createTestSuiteXml(final int testCaseCount) {
+    int errors = 0;
+    int failures = 0;
+    int skipped = 0;
+    StringBuilder testCases = new StringBuilder();
+    for (int i = 0; i < testCaseCount; i++) {
+      testCases.append("  <testcase name=\"test").append(i)
+          .append("\" classname=\"org.example.GeneratedTest\" time=\"0.00").append(i % 10)
+          .append("\"");
+      if (i % 20 == 0) {
+        errors++;
+        testCases.append(">\n    <error message=\"Unexpected &lt;exception&gt;\""
+            + " type=\"java.lang.IllegalStateException\">java.lang.IllegalStateException\n"
+            + "\tat org.example.GeneratedTest.test").append(i).append("(GeneratedTest.java:")
+            .append(i).append(")\n</error>\n  </testcase>\n");
+      } else if (i % 10 == 0) {
+        failures++;
+        testCases.append(">\n    <failure message=\"expected:&lt;1&gt; but was:&lt;2&gt;\""
+            + " type=\"java.lang.AssertionError\">java.lang.AssertionError\n"
+            + "\tat org.example.GeneratedTest.test").append(i).append("(GeneratedTest.java:")
+            .append(i).append(")\n</failure>\n  </testcase>\n");
+      } else if (i % 50 == 1) {
+        skipped++;
+        testCases.append(">\n    <skipped/>\n  </testcase>\n");
+      } else {
+        testCases.append("/>\n");
+      }
+    }
+
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<testsuite name=\"org.example.GeneratedTest\" time=\"1.234\" tests=\"" + testCaseCount
+        + "\" errors=\"" + errors + "\" failures=\"" + failures + "\" skipped=\"" + skipped
+        + "\">\n"
+        + "  <properties>\n    <property name=\"java.version\" value=\"1.8.0\"/>\n"
+        + "  </properties>\n"
+        + testCases
+        + "</testsuite>\n";
+  }
+
+  private SAXParserFactory saxParserFactory;
+
+  @Param({ "10", "1000", "10000" })
+  public int testCaseCount;
+
+  private byte[] testSuiteXml;
+
+  /**
+   * Parses the generated file and streams the summary.
+   */
+  @Benchmark
+  public void parse(final Blackhole blackhole)
+      throws ParserConfigurationException, SAXException, IOException {
+
+    TestResultSummarizer testResultSummarizer = new TestResultSummarizer();
+    CountingWriter writer = new CountingWriter();
+    testResultSummarizer.xmlBody = writer;
+
+    SAXParser saxParser = saxParserFactory.newSAXParser();
+    saxParser.parse(new ByteArrayInputStream(testSuiteXml),
+        new TestResultSAXHandler(testResultSummarizer));
+
+    blackhole.consume(testResultSummarizer.tests);
+    blackhole.consume(writer.count);
+  }
+
+  @Setup
+  public void setUp() {
+    saxParserFactory = SAXParserFactory.newInstance();
+    testSuiteXml = createTestSuiteXml(testCaseCount).getBytes(StandardCharsets.UTF_8);
+  }
+
+}
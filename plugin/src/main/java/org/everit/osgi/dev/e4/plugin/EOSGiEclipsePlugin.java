@@ -22,10 +22,13 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.everit.osgi.dev.dist.util.attach.EOSGiVMManager;
+import org.everit.osgi.dev.e4.plugin.m2e.DependencyTreeCache;
+import org.everit.osgi.dev.e4.plugin.m2e.ExecutionPlanCache;
 import org.everit.osgi.dev.e4.plugin.m2e.packaging.ProjectPackager;
 import org.osgi.framework.BundleContext;
 
@@ -56,8 +59,12 @@ public class EOSGiEclipsePlugin extends AbstractUIPlugin {
     return AbstractUIPlugin.imageDescriptorFromPlugin(PLUGIN_ID, path);
   }
 
+  private DependencyTreeCache dependencyTreeCache;
+
   private EOSGiProjectManager eosgiProjectManager;
 
+  private ExecutionPlanCache executionPlanCache;
+
   private EOSGiLog log;
 
   private ProjectPackager projectPackageUtil;
@@ -105,6 +112,10 @@ public class EOSGiEclipsePlugin extends AbstractUIPlugin {
     return true;
   }
 
+  public DependencyTreeCache getDependencyTreeCache() {
+    return this.dependencyTreeCache;
+  }
+
   public EOSGiLog getEOSGiLog() {
     return this.log;
   }
@@ -113,6 +124,10 @@ public class EOSGiEclipsePlugin extends AbstractUIPlugin {
     return this.eosgiProjectManager;
   }
 
+  public ExecutionPlanCache getExecutionPlanCache() {
+    return this.executionPlanCache;
+  }
+
   public ProjectPackager getProjectPackageUtil() {
     return this.projectPackageUtil;
   }
@@ -127,6 +142,11 @@ public class EOSGiEclipsePlugin extends AbstractUIPlugin {
 
     EOSGiEclipsePlugin.plugin = this;
     this.log = new EOSGiLog(getLog());
+    this.executionPlanCache = new ExecutionPlanCache();
+    MavenPlugin.getMavenProjectRegistry().addMavenProjectChangedListener(this.executionPlanCache);
+    this.dependencyTreeCache = new DependencyTreeCache();
+    MavenPlugin.getMavenProjectRegistry()
+        .addMavenProjectChangedListener(this.dependencyTreeCache);
     this.projectPackageUtil = new ProjectPackager();
     this.projectPackageUtil.open();
     this.eosgiProjectManager = new EOSGiProjectManager();
@@ -136,6 +156,14 @@ public class EOSGiEclipsePlugin extends AbstractUIPlugin {
   @Override
   public void stop(final BundleContext context) throws Exception {
     EOSGiEclipsePlugin.plugin = null;
+    if (this.executionPlanCache != null) {
+      MavenPlugin.getMavenProjectRegistry()
+          .removeMavenProjectChangedListener(this.executionPlanCache);
+    }
+    if (this.dependencyTreeCache != null) {
+      MavenPlugin.getMavenProjectRegistry()
+          .removeMavenProjectChangedListener(this.dependencyTreeCache);
+    }
     if (this.projectPackageUtil != null) {
       this.projectPackageUtil.close();
     }
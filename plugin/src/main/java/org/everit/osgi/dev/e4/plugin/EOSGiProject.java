@@ -22,17 +22,26 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.FileUtils;
@@ -41,11 +50,13 @@ import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.eclipse.aether.graph.DependencyNode;
-import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.ILaunchConfiguration;
@@ -61,12 +72,17 @@ import org.eclipse.m2e.core.project.configurator.MojoExecutionKey;
 import org.everit.osgi.dev.dist.util.DistConstants;
 import org.everit.osgi.dev.dist.util.attach.EOSGiVMManager;
 import org.everit.osgi.dev.e4.plugin.core.launcher.LaunchConfigurationBuilder;
+import org.everit.osgi.dev.e4.plugin.m2e.ExecutionPlanCache;
 import org.everit.osgi.dev.e4.plugin.m2e.M2EUtil;
 import org.everit.osgi.dev.e4.plugin.m2e.MavenExecutionContextModifiers;
+import org.everit.osgi.dev.e4.plugin.m2e.MavenExecutionContextPool;
+import org.everit.osgi.dev.e4.plugin.m2e.packaging.PackagingScheduler;
+import org.everit.osgi.dev.e4.plugin.m2e.packaging.PackagingSession;
 import org.everit.osgi.dev.e4.plugin.m2e.packaging.ProjectPackager;
-import org.everit.osgi.dev.e4.plugin.util.DAGFlattener;
+import org.everit.osgi.dev.e4.plugin.util.CancelForwardingProgressMonitor;
 import org.everit.osgi.dev.e4.plugin.util.DAGFlattener.KeyWithNodes;
 import org.everit.osgi.dev.e4.plugin.util.DependencyNodeChildResolver;
+import org.everit.osgi.dev.e4.plugin.util.ResourceRefresher;
 import org.osgi.framework.Bundle;
 
 /**
@@ -74,16 +90,51 @@ import org.osgi.framework.Bundle;
  */
 public class EOSGiProject {
 
-  private static final DAGFlattener<GAV, DependencyNode> DEPENDENCY_TREE_FLATTENER =
-      new DAGFlattener<>((dependencyNode) -> new GAV(dependencyNode),
-          new DependencyNodeChildResolver());
+  /**
+   * DTO.
+   */
+  private static class ExecutionFolders {
+
+    String distFolder;
+
+    String testResultFolder;
+  }
+
+  private static final DependencyNodeChildResolver DEPENDENCY_NODE_CHILD_RESOLVER =
+      new DependencyNodeChildResolver();
+
+  /**
+   * Resolves the environments of the executions of the projects. The executor is shared by all
+   * projects, so the number of threads stays bounded even if several projects are resolved at
+   * the same time, e.g. by the warm-up job.
+   */
+  private static final ExecutorService ENVIRONMENT_RESOLUTION_EXECUTOR =
+      createEnvironmentResolutionExecutor();
 
   public static final Collection<String> EOSGI_ACCEPTED_GOALS =
       Collections.unmodifiableSet(
           new HashSet<>(Arrays.asList(new String[] { "dist", "integration-test" })));
 
+  /**
+   * If this system property is <code>true</code>, the environment folder is not refreshed in the
+   * workspace after the dist goal is executed.
+   */
+  public static final String SYSPROP_SKIP_DIST_OUTPUT_REFRESH = "eosgi.skipDistOutputRefresh";
+
   private static final int WORK_TICK_SIZE = 10;
 
+  private static ExecutorService createEnvironmentResolutionExecutor() {
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 1,
+        TimeUnit.MINUTES, new LinkedBlockingQueue<>(), (runnable) -> {
+          Thread thread = new Thread(runnable, "EOSGi environment resolver");
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   private final EOSGiVMManager eosgiVMManager;
 
   private ExecutableEnvironmentContainer executableEnvironmentContainer;
@@ -99,9 +150,9 @@ public class EOSGiProject {
   }
 
   private void addNonUpToDateDependenciesSpecifiedAtEnvironmentLevel(
-      final Collection<IMavenProjectFacade> dependenciesToPackage,
-      final ExecutableEnvironment executableEnvironment, final SubMonitor monitor)
-      throws CoreException {
+      final Map<IMavenProjectFacade, Set<IMavenProjectFacade>> dependenciesToPackage,
+      final ExecutableEnvironment executableEnvironment, final PackagingSession packagingSession,
+      final SubMonitor monitor) throws CoreException {
 
     Collection<GAV> additionalGAVs = executableEnvironment.getAdditionalArtifactGAVs();
 
@@ -110,7 +161,7 @@ public class EOSGiProject {
     }
 
     Set<GAV> alreadyAddedGAV = new HashSet<>();
-    for (IMavenProjectFacade mavenProjectFacade : dependenciesToPackage) {
+    for (IMavenProjectFacade mavenProjectFacade : dependenciesToPackage.keySet()) {
       ArtifactKey artifactKey = mavenProjectFacade.getArtifactKey();
       alreadyAddedGAV.add(
           new GAV(artifactKey.getGroupId(), artifactKey.getArtifactId(), artifactKey.getVersion()));
@@ -125,69 +176,104 @@ public class EOSGiProject {
             mavenProjectRegistry.getMavenProject(gav.groupId, gav.artifactId, gav.version);
 
         if (mavenProject != null
-            && !projectPackageUtil.isProjectPackagedAndUpToDate(mavenProject, monitor)) {
+            && !projectPackageUtil.isProjectPackagedAndUpToDate(mavenProject, packagingSession,
+                monitor)) {
 
-          dependenciesToPackage.add(mavenProject);
+          // The dependency graph of these projects is unknown, so they are packaged one by one
+          // after the other dependencies
+          dependenciesToPackage.put(mavenProject,
+              new HashSet<>(dependenciesToPackage.keySet()));
         }
         alreadyAddedGAV.add(gav);
       }
     }
   }
 
+  /**
+   * Adds the folders that the sync-back goal might write to the refresher. The goal copies the
+   * changed files of the environment into the source folders of the project, so every folder of
+   * the project is refreshed except the build directory. Only the environment folder is refreshed
+   * from the build directory.
+   */
+  private void addSyncBackFolders(final MavenProject mavenProject,
+      final ExecutableEnvironment executableEnvironment,
+      final ResourceRefresher resourceRefresher) {
+
+    File buildDirectory = new File(mavenProject.getBuild().getDirectory());
+    File[] projectFolders = mavenProject.getBasedir().listFiles(File::isDirectory);
+    if (projectFolders != null) {
+      for (File projectFolder : projectFolders) {
+        if (!projectFolder.equals(buildDirectory)) {
+          resourceRefresher.addFolder(projectFolder);
+        }
+      }
+    }
+    resourceRefresher.addFolder(executableEnvironment.getRootFolder());
+  }
+
   private void atomicDist(final ExecutableEnvironment executableEnvironment,
       final SubMonitor monitor) throws CoreException {
-    EOSGiEclipsePlugin.getDefault().getEOSGiManager().getTestResultTracker()
-        .updateDistTimestampOfEnvironment(executableEnvironment);
-
-    SubMonitor distMonitor = monitor.split(1);
-    distMonitor.setWorkRemaining(WORK_TICK_SIZE);
-
-    SubMonitor dependencyTreeAnalyzerMonitor = distMonitor.split(1);
-    dependencyTreeAnalyzerMonitor.setTaskName("Analyzing dependency tree");
-    dependencyTreeAnalyzerMonitor.setWorkRemaining(1);
-
-    Collection<IMavenProjectFacade> dependenciesToPackage =
-        resolveNonUpToDateDependencies(executableEnvironment.getEnvironmentId(), distMonitor);
-
-    addNonUpToDateDependenciesSpecifiedAtEnvironmentLevel(dependenciesToPackage,
-        executableEnvironment, monitor);
-
-    EOSGiEclipsePlugin eosgiEclipsePlugin = EOSGiEclipsePlugin.getDefault();
-    ProjectPackager projectPackageUtil = eosgiEclipsePlugin.getProjectPackageUtil();
+    ProjectPackager projectPackageUtil = EOSGiEclipsePlugin.getDefault().getProjectPackageUtil();
+    EOSGiProjectManager eosgiProjectManager = EOSGiEclipsePlugin.getDefault().getEOSGiManager();
+    eosgiProjectManager.distStarted(executableEnvironment);
+    try (MavenExecutionContextPool contextPool = new MavenExecutionContextPool();
+        PackagingSession packagingSession = projectPackageUtil.openSession(contextPool, monitor)) {
+      EOSGiEclipsePlugin.getDefault().getEOSGiManager().getTestResultTracker()
+          .updateDistTimestampOfEnvironment(executableEnvironment);
+
+      SubMonitor distMonitor = monitor.split(1);
+      distMonitor.setWorkRemaining(WORK_TICK_SIZE);
+
+      SubMonitor dependencyTreeAnalyzerMonitor = distMonitor.split(1);
+      dependencyTreeAnalyzerMonitor.setTaskName("Analyzing dependency tree");
+      dependencyTreeAnalyzerMonitor.setWorkRemaining(1);
+
+      Map<IMavenProjectFacade, Set<IMavenProjectFacade>> dependenciesToPackage =
+          resolveNonUpToDateDependencies(executableEnvironment.getEnvironmentId(),
+              packagingSession, distMonitor);
+
+      addNonUpToDateDependenciesSpecifiedAtEnvironmentLevel(dependenciesToPackage,
+          executableEnvironment, packagingSession, monitor);
+
+      boolean projectPackagedAndUpToDate =
+          projectPackageUtil.isProjectPackagedAndUpToDate(mavenProjectFacade, packagingSession,
+              dependencyTreeAnalyzerMonitor);
+
+      int packagingNum = dependenciesToPackage.size();
+      if (!projectPackagedAndUpToDate) {
+        packagingNum++;
+      }
 
-    boolean projectPackagedAndUpToDate =
-        projectPackageUtil.isProjectPackagedAndUpToDate(mavenProjectFacade,
-            dependencyTreeAnalyzerMonitor);
+      final int packageAnalyzeRatio = 8;
+      SubMonitor packagingAllMonitor = distMonitor.split(packageAnalyzeRatio);
+      packagingAllMonitor.setWorkRemaining(packagingNum);
 
-    int packagingNum = dependenciesToPackage.size();
-    if (!projectPackagedAndUpToDate) {
-      packagingNum++;
-    }
+      packDependencies(dependenciesToPackage, packagingSession, packagingAllMonitor);
 
-    final int packageAnalyzeRatio = 8;
-    SubMonitor packagingAllMonitor = distMonitor.split(packageAnalyzeRatio);
-    packagingAllMonitor.setWorkRemaining(packagingNum);
+      ArtifactKey artifactKey = mavenProjectFacade.getArtifactKey();
+      String gav = artifactKey.getGroupId() + ":" + artifactKey.getArtifactId() + ":"
+          + artifactKey.getVersion();
 
-    packDependencies(dependenciesToPackage, packagingAllMonitor);
+      if (!projectPackagedAndUpToDate) {
+        SubMonitor packageMonitor = packagingAllMonitor.split(1);
+        packageMonitor.setWorkRemaining(1);
 
-    ArtifactKey artifactKey = mavenProjectFacade.getArtifactKey();
-    String gav = artifactKey.getGroupId() + ":" + artifactKey.getArtifactId() + ":"
-        + artifactKey.getVersion();
+        packageMonitor.setTaskName("Packaging project: " + gav);
 
-    if (!projectPackagedAndUpToDate) {
-      SubMonitor packageMonitor = packagingAllMonitor.split(1);
-      packageMonitor.setWorkRemaining(1);
+        projectPackageUtil.packageProject(mavenProjectFacade, packagingSession,
+            new NullProgressMonitor());
+      }
 
-      packageMonitor.setTaskName("Packaging project: " + gav);
+      SubMonitor distGoalMonitor = distMonitor.split(1);
+      distGoalMonitor.setWorkRemaining(1);
+      distGoalMonitor.setTaskName("Calling eosgi:dist on project: " + gav);
 
-      projectPackageUtil.packageProject(mavenProjectFacade, new NullProgressMonitor());
+      executeDistWithMaven(executableEnvironment, packagingSession, contextPool,
+          distGoalMonitor);
+    } catch (CoreException | RuntimeException | Error e) {
+      eosgiProjectManager.distFailed(executableEnvironment);
+      throw e;
     }
-
-    SubMonitor distGoalMonitor = distMonitor.split(1);
-    distGoalMonitor.setWorkRemaining(1);
-    distGoalMonitor.setTaskName("Calling eosgi:dist on project: " + gav);
-
-    executeDistWithMaven(executableEnvironment, distGoalMonitor);
   }
 
   private void atomicLaunch(final ExecutableEnvironment executableEnvironment, final String mode,
@@ -278,6 +364,7 @@ public class EOSGiProject {
   }
 
   private void executeDistWithMaven(final ExecutableEnvironment executableEnvironment,
+      final PackagingSession packagingSession, final MavenExecutionContextPool contextPool,
       final SubMonitor distGoalMonitor) throws CoreException {
 
     EOSGiEclipsePlugin eosgiEclipsePlugin = EOSGiEclipsePlugin.getDefault();
@@ -299,7 +386,8 @@ public class EOSGiProject {
             EOSGiVMManager.class.getClassLoader());
 
     ProjectPackager packageUtil = eosgiEclipsePlugin.getProjectPackageUtil();
-    modifiers.workspaceReaderReplacer = (original) -> packageUtil.createWorkspaceReader(original);
+    modifiers.workspaceReaderReplacer =
+        (original) -> packageUtil.createWorkspaceReader(original, packagingSession);
 
     M2EUtil.executeInContext(mavenProjectFacade, modifiers, (context, monitor1) -> {
 
@@ -309,16 +397,20 @@ public class EOSGiProject {
       MavenProject mavenProject = mavenProjectFacade.getMavenProject(monitor1);
       packageUtil.setArtifactsOnMavenProject(mavenProject, mavenProjectFacade.getProject());
 
-      MavenExecutionPlan executionPlan =
-          MavenPlugin.getMaven().calculateExecutionPlan(mavenProject, Arrays.asList(goal), true,
-              distGoalMonitor);
+      MavenExecutionPlan executionPlan = eosgiEclipsePlugin.getExecutionPlanCache()
+          .getExecutionPlan(mavenProjectFacade, mavenProject, goal, distGoalMonitor);
 
       executeExecutionPlan(mavenProject, executionPlan, monitor1, context,
           "Error during executing command 'eosgi:dist' on project: "
               + mavenProjectFacade.getProject().getName());
 
+      if (!Boolean.getBoolean(SYSPROP_SKIP_DIST_OUTPUT_REFRESH)) {
+        ResourceRefresher resourceRefresher = new ResourceRefresher();
+        resourceRefresher.addFolder(executableEnvironment.getRootFolder());
+        resourceRefresher.refresh(monitor1);
+      }
       return null;
-    }, new NullProgressMonitor());
+    }, contextPool, new NullProgressMonitor());
   }
 
   private void executeExecutionPlan(final MavenProject mavenProject,
@@ -330,22 +422,19 @@ public class EOSGiProject {
     IMaven maven = MavenPlugin.getMaven();
     for (MojoExecution mojoExecution : mojoExecutions) {
       maven.execute(mavenProject, mojoExecution, monitor);
-      mavenProjectFacade.getProject().refreshLocal(IProject.DEPTH_INFINITE, monitor);
-
       M2EUtil.checkExecutionResultExceptions(context, errorMessage);
     }
   }
 
   private List<ExecutableEnvironment> getDefaultExecutableEnvironmentList(
       final MojoExecution mojoExecution, final boolean defaultExecution,
-      final IProgressMonitor monitor) throws CoreException {
+      final ExecutionFolders executionFolders) {
     List<ExecutableEnvironment> defaultExecutableEnvironments = new ArrayList<>();
-    String distFolder = resolveDistFolder(mojoExecution, monitor);
-    File environmentRootFolder = new File(distFolder, DistConstants.DEFAULT_ENVIRONMENT_ID);
-    String testResultFolder = resolveTestResultFolder(mojoExecution, monitor);
+    File environmentRootFolder =
+        new File(executionFolders.distFolder, DistConstants.DEFAULT_ENVIRONMENT_ID);
 
-    File environmentTestResultFolder =
-        resolveEnvironmentTestResultFolder(testResultFolder, DistConstants.DEFAULT_ENVIRONMENT_ID);
+    File environmentTestResultFolder = resolveEnvironmentTestResultFolder(
+        executionFolders.testResultFolder, DistConstants.DEFAULT_ENVIRONMENT_ID);
 
     defaultExecutableEnvironments
         .add(new ExecutableEnvironment.Builder()
@@ -410,20 +499,13 @@ public class EOSGiProject {
     }
   }
 
-  private void packDependencies(final Collection<IMavenProjectFacade> dependencies,
-      final SubMonitor monitor) throws CoreException {
+  private void packDependencies(
+      final Map<IMavenProjectFacade, Set<IMavenProjectFacade>> dependencies,
+      final PackagingSession packagingSession, final SubMonitor monitor) throws CoreException {
 
     ProjectPackager projectPackageUtil = EOSGiEclipsePlugin.getDefault().getProjectPackageUtil();
-
-    for (IMavenProjectFacade mavenProjectFacade : dependencies) {
-      ArtifactKey artifactKey = mavenProjectFacade.getArtifactKey();
-      SubMonitor packageMonitor = monitor.split(1);
-      packageMonitor.setWorkRemaining(1);
-
-      packageMonitor.setTaskName("Packaging dependency: " + artifactKey.getGroupId() + ":"
-          + artifactKey.getArtifactId() + ":" + artifactKey.getVersion());
-      projectPackageUtil.packageProject(mavenProjectFacade, new NullProgressMonitor());
-    }
+    new PackagingScheduler(projectPackageUtil).packageProjects(dependencies, packagingSession,
+        monitor);
   }
 
   /**
@@ -442,26 +524,31 @@ public class EOSGiProject {
     monitor.subTask("Resolving OSGi environments");
 
     this.mavenProjectFacade = newMavenProjectFacade;
-    Set<ExecutableEnvironment> executableEnvironments = new TreeSet<>();
+
+    // The value is true for the execution of the plain plugin configuration
+    Map<MojoExecution, Boolean> defaultExecutionByMojoExecution = new LinkedHashMap<>();
 
     MojoExecution defaultMojoExecution = resolvePlainPluginConfigMojoExecution(monitor);
     Xpp3Dom defaultMojoExecutionConfiguration = null;
     if (defaultMojoExecution != null) {
       defaultMojoExecutionConfiguration = defaultMojoExecution.getConfiguration();
-      executableEnvironments
-          .addAll(resolveExecutableEnvironments(defaultMojoExecution, true, monitor));
+      defaultExecutionByMojoExecution.put(defaultMojoExecution, Boolean.TRUE);
     }
 
     Set<MojoExecution> executions = resolveEOSGiExecutions(monitor);
     for (MojoExecution mojoExecution : executions) {
       if (defaultMojoExecutionConfiguration == null
           || !defaultMojoExecutionConfiguration.equals(mojoExecution.getConfiguration())) {
-        executableEnvironments.addAll(resolveExecutableEnvironments(mojoExecution, false, monitor));
+        defaultExecutionByMojoExecution.put(mojoExecution, Boolean.FALSE);
       }
     }
 
-    this.executableEnvironmentContainer =
-        new ExecutableEnvironmentContainer(executableEnvironments);
+    this.executableEnvironmentContainer = new ExecutableEnvironmentContainer(
+        resolveExecutableEnvironments(defaultExecutionByMojoExecution, monitor));
+
+    // The changes of the dependencies are reported for the environments of the project
+    EOSGiEclipsePlugin.getDefault().getProjectPackageUtil().getReverseDependencyIndex()
+        .index(newMavenProjectFacade, monitor);
   }
 
   private Collection<GAV> resolveAdditionalGAVs(final Xpp3Dom environmentNode) {
@@ -487,13 +574,6 @@ public class EOSGiProject {
     return result;
   }
 
-  private String resolveDistFolder(final MojoExecution mojoExecution,
-      final IProgressMonitor monitor) throws CoreException {
-
-    return M2EUtil.getParameterValue(mavenProjectFacade.getMavenProject(monitor), "distFolder",
-        String.class, mojoExecution, monitor);
-  }
-
   private File resolveEnvironmentTestResultFolder(final String testResultFolder,
       final String environmentId) {
     File environmentIntegrationTestFolderFolder = new File(testResultFolder, environmentId);
@@ -518,15 +598,16 @@ public class EOSGiProject {
     Set<MojoExecutionKey> executionKeys = mojoExecutionMapping.keySet();
 
     Set<MojoExecution> eosgiExecutions = new LinkedHashSet<>();
-    IMaven maven = MavenPlugin.getMaven();
+    ExecutionPlanCache executionPlanCache =
+        EOSGiEclipsePlugin.getDefault().getExecutionPlanCache();
 
     MavenProject mavenProject = mavenProjectFacade.getMavenProject(monitor);
 
     for (MojoExecutionKey mojoExecutionKey : executionKeys) {
       if (isEOSGiExecution(mojoExecutionKey)) {
-        MavenExecutionPlan executionPlan = maven.calculateExecutionPlan(mavenProject,
-            Arrays.asList("eosgi:integration-test@" + mojoExecutionKey.getExecutionId()), true,
-            monitor);
+        MavenExecutionPlan executionPlan = executionPlanCache.getExecutionPlan(
+            mavenProjectFacade, mavenProject,
+            "eosgi:integration-test@" + mojoExecutionKey.getExecutionId(), monitor);
 
         MojoExecution mojoExecution = executionPlan.getMojoExecutions().get(0);
         eosgiExecutions.add(mojoExecution);
@@ -536,22 +617,27 @@ public class EOSGiProject {
   }
 
   private Collection<ExecutableEnvironment> resolveExecutableEnvironments(
-      final MojoExecution mojoExecution, final boolean defaultExecution,
-      final IProgressMonitor monitor) throws CoreException {
+      final MavenProject mavenProject, final MojoExecution mojoExecution,
+      final boolean defaultExecution, final IProgressMonitor monitor) throws CoreException {
+
+    ExecutionFolders executionFolders =
+        resolveExecutionFolders(mavenProject, mojoExecution, monitor);
+
     Xpp3Dom configuration = mojoExecution.getConfiguration();
     Xpp3Dom environmentsNode = configuration.getChild("environments");
     if (environmentsNode == null) {
-      return getDefaultExecutableEnvironmentList(mojoExecution, defaultExecution, monitor);
+      return getDefaultExecutableEnvironmentList(mojoExecution, defaultExecution,
+          executionFolders);
     }
     Set<ExecutableEnvironment> result = new LinkedHashSet<>();
     Xpp3Dom[] environmentsChildNodes = environmentsNode.getChildren();
 
     if (environmentsChildNodes.length == 0) {
-      return getDefaultExecutableEnvironmentList(mojoExecution, defaultExecution, monitor);
+      return getDefaultExecutableEnvironmentList(mojoExecution, defaultExecution,
+          executionFolders);
     }
-    String distFolder = resolveDistFolder(mojoExecution, monitor);
-    File distFolderFile = new File(distFolder);
-    String testResultFolder = resolveTestResultFolder(mojoExecution, monitor);
+    File distFolderFile = new File(executionFolders.distFolder);
+    String testResultFolder = executionFolders.testResultFolder;
 
     for (Xpp3Dom environmentNode : environmentsChildNodes) {
       Xpp3Dom environmentIdNode = environmentNode.getChild("id");
@@ -578,15 +664,110 @@ public class EOSGiProject {
     return result;
   }
 
-  private List<IMavenProjectFacade> resolveNonUpToDateDependencies(
+  /**
+   * Resolves the environments of the executions. If there are more executions, they are resolved
+   * in parallel, each in its own maven execution context, as a context must not be used by more
+   * threads at the same time.
+   *
+   * @param defaultExecutionByMojoExecution
+   *          The executions with a flag that shows whether the execution belongs to the plain
+   *          plugin configuration.
+   * @param monitor
+   *          The monitor to show progress.
+   * @return The environments of all executions.
+   * @throws CoreException
+   *           if the resolution of any of the executions fails.
+   */
+  private Set<ExecutableEnvironment> resolveExecutableEnvironments(
+      final Map<MojoExecution, Boolean> defaultExecutionByMojoExecution,
+      final IProgressMonitor monitor) throws CoreException {
+
+    Set<ExecutableEnvironment> result = new TreeSet<>();
+    if (defaultExecutionByMojoExecution.isEmpty()) {
+      return result;
+    }
+
+    SubMonitor subMonitor =
+        SubMonitor.convert(monitor, defaultExecutionByMojoExecution.size() + 1);
+    MavenProject mavenProject = mavenProjectFacade.getMavenProject(subMonitor.split(1));
+
+    if (defaultExecutionByMojoExecution.size() == 1) {
+      Entry<MojoExecution, Boolean> entry =
+          defaultExecutionByMojoExecution.entrySet().iterator().next();
+      result.addAll(resolveExecutableEnvironments(mavenProject, entry.getKey(), entry.getValue(),
+          subMonitor.split(1)));
+      return result;
+    }
+
+    IMavenProjectFacade facade = mavenProjectFacade;
+    List<Future<Collection<ExecutableEnvironment>>> futures = new ArrayList<>();
+    try {
+      for (Entry<MojoExecution, Boolean> entry : defaultExecutionByMojoExecution.entrySet()) {
+        futures.add(ENVIRONMENT_RESOLUTION_EXECUTOR.submit(() -> M2EUtil.executeInContext(facade,
+            null, (context, monitor1) -> resolveExecutableEnvironments(mavenProject,
+                entry.getKey(), entry.getValue(), monitor1),
+            new CancelForwardingProgressMonitor(subMonitor))));
+      }
+
+      for (Future<Collection<ExecutableEnvironment>> future : futures) {
+        result.addAll(future.get());
+        subMonitor.split(1);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OperationCanceledException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CoreException) {
+        throw (CoreException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new CoreException(new Status(IStatus.ERROR, EOSGiEclipsePlugin.PLUGIN_ID,
+          "Error during resolving the environments of project: " + facade.getProject().getName(),
+          cause));
+    } finally {
+      for (Future<Collection<ExecutableEnvironment>> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return result;
+  }
+
+  private ExecutionFolders resolveExecutionFolders(final MavenProject mavenProject,
+      final MojoExecution mojoExecution, final IProgressMonitor monitor) throws CoreException {
+
+    ExecutionFolders executionFolders = new ExecutionFolders();
+    executionFolders.distFolder = M2EUtil.getParameterValue(mavenProject, "distFolder",
+        String.class, mojoExecution, monitor);
+    executionFolders.testResultFolder = M2EUtil.getParameterValue(mavenProject,
+        "integrationTestTargetFolder", String.class, mojoExecution, monitor);
+    return executionFolders;
+  }
+
+  /**
+   * Resolves the workspace projects in the dependency tree that should be packaged. Children are
+   * after their parents in the flattened dependency tree, so it is iterated backwards and the
+   * prerequisites of every node are known by the time the node is processed.
+   *
+   * @return The projects that should be packaged with the projects to package that they depend on
+   *         directly or via other (up to date or non-workspace) artifacts.
+   */
+  private Map<IMavenProjectFacade, Set<IMavenProjectFacade>> resolveNonUpToDateDependencies(
       final List<KeyWithNodes<GAV, DependencyNode>> flattenedDependencyTree,
-      final IProgressMonitor monitor)
+      final PackagingSession packagingSession, final IProgressMonitor monitor)
       throws CoreException {
 
     IMavenProjectRegistry mavenProjectRegistry = MavenPlugin.getMavenProjectRegistry();
     ProjectPackager projectPackageUtil = EOSGiEclipsePlugin.getDefault().getProjectPackageUtil();
 
-    List<IMavenProjectFacade> result = new ArrayList<>();
+    Map<IMavenProjectFacade, Set<IMavenProjectFacade>> result = new LinkedHashMap<>();
+    Map<GAV, IMavenProjectFacade> nonUpToDateProjectsByGAV = new HashMap<>();
+    Map<GAV, Set<IMavenProjectFacade>> prerequisitesByGAV = new HashMap<>();
 
     ListIterator<KeyWithNodes<GAV, DependencyNode>> listIterator =
         flattenedDependencyTree.listIterator(flattenedDependencyTree.size());
@@ -596,16 +777,20 @@ public class EOSGiProject {
 
       if (keyWithNodes != null) {
         GAV gav = keyWithNodes.key;
+        Set<IMavenProjectFacade> prerequisites =
+            resolvePrerequisites(keyWithNodes, nonUpToDateProjectsByGAV, prerequisitesByGAV);
+        prerequisitesByGAV.put(gav, prerequisites);
+
         if (gav.groupId != null) {
           IMavenProjectFacade dependencyMavenProject =
               mavenProjectRegistry.getMavenProject(gav.groupId, gav.artifactId, gav.version);
 
           if (dependencyMavenProject != null
               && !projectPackageUtil.isProjectPackagedAndUpToDate(dependencyMavenProject,
-                  monitor)) {
-
-            result.add(dependencyMavenProject);
+                  packagingSession, monitor)) {
 
+            result.put(dependencyMavenProject, prerequisites);
+            nonUpToDateProjectsByGAV.put(gav, dependencyMavenProject);
           }
         }
       }
@@ -613,18 +798,16 @@ public class EOSGiProject {
     return result;
   }
 
-  private List<IMavenProjectFacade> resolveNonUpToDateDependencies(final String environmentId,
+  private Map<IMavenProjectFacade, Set<IMavenProjectFacade>> resolveNonUpToDateDependencies(
+      final String environmentId, final PackagingSession packagingSession,
       final IProgressMonitor monitor) throws CoreException {
     Objects.requireNonNull(environmentId, "environmentId must be not null!");
 
-    DependencyNode rootNode =
-        MavenPlugin.getMavenModelManager().readDependencyTree(mavenProjectFacade,
-            mavenProjectFacade.getMavenProject(monitor), null, monitor);
-
     List<KeyWithNodes<GAV, DependencyNode>> flattenedDependencyTree =
-        DEPENDENCY_TREE_FLATTENER.flatten(rootNode);
+        EOSGiEclipsePlugin.getDefault().getDependencyTreeCache()
+            .getFlattenedDependencyTree(mavenProjectFacade, monitor);
 
-    return resolveNonUpToDateDependencies(flattenedDependencyTree, monitor);
+    return resolveNonUpToDateDependencies(flattenedDependencyTree, packagingSession, monitor);
   }
 
   private MojoExecution resolvePlainPluginConfigMojoExecution(final IProgressMonitor monitor)
@@ -635,11 +818,9 @@ public class EOSGiProject {
       return null;
     }
 
-    IMaven maven = MavenPlugin.getMaven();
-    MavenExecutionPlan executionPlan =
-        maven.calculateExecutionPlan(mavenProject,
-            Arrays.asList(new String[] { "eosgi:integration-test" }),
-            true, monitor);
+    MavenExecutionPlan executionPlan = EOSGiEclipsePlugin.getDefault().getExecutionPlanCache()
+        .getExecutionPlan(this.mavenProjectFacade, mavenProject, "eosgi:integration-test",
+            monitor);
 
     List<MojoExecution> mojoExecutions = executionPlan.getMojoExecutions();
     if (mojoExecutions.isEmpty()) {
@@ -648,6 +829,27 @@ public class EOSGiProject {
     return mojoExecutions.iterator().next();
   }
 
+  private Set<IMavenProjectFacade> resolvePrerequisites(
+      final KeyWithNodes<GAV, DependencyNode> keyWithNodes,
+      final Map<GAV, IMavenProjectFacade> nonUpToDateProjectsByGAV,
+      final Map<GAV, Set<IMavenProjectFacade>> prerequisitesByGAV) {
+
+    Set<IMavenProjectFacade> prerequisites = new HashSet<>();
+    for (DependencyNode node : keyWithNodes.nodes) {
+      for (DependencyNode childNode : DEPENDENCY_NODE_CHILD_RESOLVER.apply(node)) {
+        GAV childGAV = new GAV(childNode);
+        IMavenProjectFacade childProject = nonUpToDateProjectsByGAV.get(childGAV);
+        if (childProject != null) {
+          prerequisites.add(childProject);
+        } else {
+          prerequisites.addAll(
+              prerequisitesByGAV.getOrDefault(childGAV, Collections.emptySet()));
+        }
+      }
+    }
+    return prerequisites;
+  }
+
   private long resolveShutdownTimeout(final Xpp3Dom environmentNode) {
     Xpp3Dom shutdownTimeoutNode = environmentNode.getChild("shutdownTimeout");
     if (shutdownTimeoutNode == null) {
@@ -656,13 +858,6 @@ public class EOSGiProject {
     return Long.parseLong(shutdownTimeoutNode.getValue());
   }
 
-  private String resolveTestResultFolder(final MojoExecution mojoExecution,
-      final IProgressMonitor monitor) throws CoreException {
-
-    return M2EUtil.getParameterValue(mavenProjectFacade.getMavenProject(monitor),
-        "integrationTestTargetFolder", String.class, mojoExecution, monitor);
-  }
-
   /**
    * Called when the user initiates a back synchronization to the source directories.
    *
@@ -690,30 +885,34 @@ public class EOSGiProject {
             EOSGiVMManager.class.getClassLoader());
 
     ProjectPackager packageUtil = EOSGiEclipsePlugin.getDefault().getProjectPackageUtil();
-    modifiers.workspaceReaderReplacer = (original) -> packageUtil.createWorkspaceReader(original);
+    try (PackagingSession packagingSession = packageUtil.openSession(monitor)) {
+      modifiers.workspaceReaderReplacer =
+          (original) -> packageUtil.createWorkspaceReader(original, packagingSession);
 
-    M2EUtil.executeInContext(mavenProjectFacade, modifiers, (context, monitor1) -> {
-      String message = "\"mvn eosgi:sync-back\" on project "
-          + mavenProjectFacade.getProject().getName();
+      M2EUtil.executeInContext(mavenProjectFacade, modifiers, (context, monitor1) -> {
+        String message = "\"mvn eosgi:sync-back\" on project "
+            + mavenProjectFacade.getProject().getName();
 
-      SubMonitor.convert(monitor1, "Calling " + message, 0);
+        SubMonitor.convert(monitor1, "Calling " + message, 0);
 
-      String executionId = executableEnvironment.getExecutionId();
-      String goal = "eosgi:sync-back" + "@" + executionId;
+        String executionId = executableEnvironment.getExecutionId();
+        String goal = "eosgi:sync-back" + "@" + executionId;
 
-      MavenProject mavenProject = mavenProjectFacade.getMavenProject(monitor1);
+        MavenProject mavenProject = mavenProjectFacade.getMavenProject(monitor1);
 
-      MavenExecutionPlan executionPlan =
-          MavenPlugin.getMaven().calculateExecutionPlan(mavenProject, Arrays.asList(goal), true,
-              monitor);
+        MavenExecutionPlan executionPlan = EOSGiEclipsePlugin.getDefault().getExecutionPlanCache()
+            .getExecutionPlan(mavenProjectFacade, mavenProject, goal, monitor);
 
-      executeExecutionPlan(mavenProject, executionPlan, monitor1, context,
-          "Error during executing " + message);
+        executeExecutionPlan(mavenProject, executionPlan, monitor1, context,
+            "Error during executing " + message);
 
-      mavenProjectFacade.getProject().refreshLocal(IProject.DEPTH_INFINITE, monitor1);
+        ResourceRefresher resourceRefresher = new ResourceRefresher();
+        addSyncBackFolders(mavenProject, executableEnvironment, resourceRefresher);
+        resourceRefresher.refresh(monitor1);
 
-      return null;
-    }, monitor);
+        return null;
+      }, monitor);
+    }
   }
 
 }
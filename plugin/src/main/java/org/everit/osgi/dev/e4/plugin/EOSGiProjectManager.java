@@ -16,20 +16,27 @@
 package org.everit.osgi.dev.e4.plugin;
 
 import java.io.Closeable;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.everit.osgi.dev.dist.util.attach.EOSGiVMManager;
 import org.everit.osgi.dev.dist.util.attach.EOSGiVMManagerParameter;
+import org.everit.osgi.dev.dist.util.attach.EnvironmentRuntimeInfo;
 import org.everit.osgi.dev.e4.plugin.testresult.TestResultTracker;
 import org.everit.osgi.dev.e4.plugin.ui.navigator.DistLabelProvider;
 
@@ -40,20 +47,38 @@ public class EOSGiProjectManager implements Closeable {
 
   private static final long EOSGI_VM_MANAGER_UPDATE_PERIOD = 1000;
 
-  private final AtomicBoolean closed = new AtomicBoolean(false);
+  /**
+   * Environments whose workspace projects changed since their last dist.
+   */
+  private final Set<ExecutableEnvironment> changedEnvironments = ConcurrentHashMap.newKeySet();
 
-  private final Map<IProject, EOSGiProject> eosgiProjects = new HashMap<>();
+  private final Map<IProject, EOSGiProject> eosgiProjects = new ConcurrentHashMap<>();
 
   private final EOSGiVMManager eosgiVMManager;
 
   private final AtomicLong eosgiVMManagerLastUpdateTime = new AtomicLong();
 
+  private final JVMStateTracker jvmStateTracker;
+
   private final Map<DistLabelProvider, Boolean> labelProviders = new ConcurrentHashMap<>();
 
+  /**
+   * The resolutions of the projects that are not managed yet, so the same project is not resolved
+   * by multiple threads at the same time.
+   */
+  private final Map<IProject, CompletableFuture<EOSGiProject>> pendingResolutions =
+      new ConcurrentHashMap<>();
+
+  private Set<EnvironmentRuntimeInfo> previousRuntimeInformations = Collections.emptySet();
+
+  private final RunningEnvironmentIndex runningEnvironmentIndex = new RunningEnvironmentIndex();
+
   private final TestResultTracker testResultTracker;
 
   private final Runnable vmStateChangeHandler;
 
+  private final EOSGiProjectWarmUpJob warmUpJob = new EOSGiProjectWarmUpJob(this);
+
   /**
    * Constructor.
    */
@@ -73,19 +98,20 @@ public class EOSGiProjectManager implements Closeable {
 
     eosgiVMManager = new EOSGiVMManager(vmManagerParam);
     vmStateChangeHandler = () -> {
-      for (DistLabelProvider labelProvider : labelProviders.keySet()) {
-        for (EOSGiProject eosgiProject : eosgiProjects.values()) {
-          Set<ExecutableEnvironment> executableEnvironments =
-              eosgiProject.getExecutableEnvironmentContainer().getExecutableEnvironments();
+      synchronized (runningEnvironmentIndex) {
+        Set<EnvironmentRuntimeInfo> runtimeInformations =
+            new HashSet<>(eosgiVMManager.getRuntimeInformations());
 
-          for (ExecutableEnvironment executableEnvironment : executableEnvironments) {
-            labelProvider.executableEnvironmentChanged(executableEnvironment);
-          }
+        if (runtimeInformations.equals(previousRuntimeInformations)) {
+          return;
         }
+        previousRuntimeInformations = runtimeInformations;
       }
+      updateRunningStates(eosgiProjects.values());
     };
     eosgiVMManager.addStateChangeListener(vmStateChangeHandler);
 
+    this.jvmStateTracker = new JVMStateTracker(eosgiVMManager);
     this.testResultTracker = new TestResultTracker(eosgiVMManager);
   }
 
@@ -96,18 +122,46 @@ public class EOSGiProjectManager implements Closeable {
   private void checkEOSGiVMManagerUpToDate() {
     long currentTimeMillis = System.currentTimeMillis();
     long lastUpdateTime = eosgiVMManagerLastUpdateTime.get();
-    if (currentTimeMillis - lastUpdateTime > EOSGI_VM_MANAGER_UPDATE_PERIOD) {
+    if (currentTimeMillis - lastUpdateTime > EOSGI_VM_MANAGER_UPDATE_PERIOD
+        && eosgiVMManagerLastUpdateTime.compareAndSet(lastUpdateTime, currentTimeMillis)) {
       eosgiVMManager.refresh();
     }
   }
 
   @Override
   public void close() {
-    closed.set(true);
+    warmUpJob.cancel();
+    jvmStateTracker.close();
     eosgiVMManager.removeStateChangeListener(vmStateChangeHandler);
     testResultTracker.close();
   }
 
+  /**
+   * Forgets that the dist of an environment was started, as the environment still contains the
+   * previous state of the changed projects.
+   *
+   * @param executableEnvironment
+   *          The environment whose dist failed.
+   */
+  public void distFailed(final ExecutableEnvironment executableEnvironment) {
+    if (changedEnvironments.add(executableEnvironment)) {
+      notifyLabelProviders(new Object[] { executableEnvironment });
+    }
+  }
+
+  /**
+   * Marks an environment as up to date, so only the changes after the start of its dist are
+   * reported.
+   *
+   * @param executableEnvironment
+   *          The environment whose dist is started.
+   */
+  public void distStarted(final ExecutableEnvironment executableEnvironment) {
+    if (changedEnvironments.remove(executableEnvironment)) {
+      notifyLabelProviders(new Object[] { executableEnvironment });
+    }
+  }
+
   /**
    * Returns the eosgi project that is managed by this plugin.
    *
@@ -119,13 +173,13 @@ public class EOSGiProjectManager implements Closeable {
    * @throws CoreException
    *           if something happens.
    */
-  public synchronized EOSGiProject get(final IProject project, final IProgressMonitor monitor)
+  public EOSGiProject get(final IProject project, final IProgressMonitor monitor)
       throws CoreException {
 
     EOSGiProject eosgiProject = eosgiProjects.get(project);
     if (eosgiProject == null && project.getNature(EOSGiNature.NATURE_ID) != null) {
-      putOrOverride(MavenPlugin.getMavenProjectRegistry().getProject(project), monitor);
-      eosgiProject = eosgiProjects.get(project);
+      eosgiProject =
+          resolveProject(MavenPlugin.getMavenProjectRegistry().getProject(project), monitor);
     }
     return eosgiProject;
   }
@@ -139,30 +193,97 @@ public class EOSGiProjectManager implements Closeable {
     return eosgiVMManager;
   }
 
+  /**
+   * Returns the eosgi project if it is already resolved without blocking the caller.
+   *
+   * @param project
+   *          The eclipse project.
+   * @return The eosgi project or <code>null</code> if it is not resolved yet or the project does
+   *         not have eosgi configuration.
+   */
+  public EOSGiProject getIfResolved(final IProject project) {
+    return eosgiProjects.get(project);
+  }
+
   public TestResultTracker getTestResultTracker() {
     return testResultTracker;
   }
 
   /**
-   * Starts tracking results and JVMs.
+   * Checks whether any workspace project of an environment changed since the last dist of the
+   * environment.
+   *
+   * @param executableEnvironment
+   *          The environment.
+   * @return <code>true</code> if a new dist is needed to get the changes into the environment.
+   */
+  public boolean isChangedSinceDist(final ExecutableEnvironment executableEnvironment) {
+    return changedEnvironments.contains(executableEnvironment);
+  }
+
+  /**
+   * Checks whether an environment is running based on the last known state of the JVMs.
+   *
+   * @param executableEnvironment
+   *          The environment.
+   * @return <code>true</code> if the environment is running.
+   */
+  public boolean isRunning(final ExecutableEnvironment executableEnvironment) {
+    return runningEnvironmentIndex.isRunning(executableEnvironment);
+  }
+
+  private void notifyLabelProviders(final Object[] executableEnvironments) {
+    for (DistLabelProvider labelProvider : labelProviders.keySet()) {
+      labelProvider.executableEnvironmentsChanged(executableEnvironments);
+    }
+  }
+
+  /**
+   * Starts tracking results and JVMs and resolves the eosgi projects of the workspace in the
+   * background.
    */
   public void open() {
     this.testResultTracker.open();
-    new Thread(() -> {
-      boolean interrupted = false;
-      while (!interrupted && !closed.get()) {
-        try {
-          eosgiVMManager.refresh();
-          Thread.sleep(EOSGI_VM_MANAGER_UPDATE_PERIOD);
-        } catch (InterruptedException e) {
-          interrupted = true;
-          Thread.currentThread().interrupt();
-        } catch (RuntimeException e) {
-          EOSGiEclipsePlugin.getDefault().getEOSGiLog()
-              .error("Error during querying the state of running JVMs", e);
+    this.jvmStateTracker.open();
+    this.warmUpJob.schedule();
+  }
+
+  /**
+   * Marks the environments of the managed projects as changed that are affected by the change of
+   * a workspace project. A project is affected if it is the changed project or it depends on the
+   * changed project directly or transitively.
+   *
+   * @param changedProject
+   *          The workspace project whose packaged artifacts became stale.
+   */
+  public void projectChanged(final IProject changedProject) {
+    Set<IProject> affectedProjects = new HashSet<>();
+    affectedProjects.add(changedProject);
+
+    IMavenProjectFacade mavenProjectFacade =
+        MavenPlugin.getMavenProjectRegistry().getProject(changedProject);
+    if (mavenProjectFacade != null) {
+      affectedProjects.addAll(EOSGiEclipsePlugin.getDefault().getProjectPackageUtil()
+          .getReverseDependencyIndex().getDependentProjects(mavenProjectFacade));
+    }
+
+    List<ExecutableEnvironment> newlyChangedEnvironments = new ArrayList<>();
+    for (IProject affectedProject : affectedProjects) {
+      EOSGiProject eosgiProject = eosgiProjects.get(affectedProject);
+      if (eosgiProject != null) {
+        for (ExecutableEnvironment executableEnvironment : eosgiProject
+            .getExecutableEnvironmentContainer().getExecutableEnvironments()) {
+
+          if (changedEnvironments.add(executableEnvironment)) {
+            newlyChangedEnvironments.add(executableEnvironment);
+          }
         }
       }
-    }).start();
+    }
+
+    if (!newlyChangedEnvironments.isEmpty()) {
+      notifyLabelProviders(newlyChangedEnvironments.toArray());
+    }
   }
 
   /**
@@ -175,15 +296,20 @@ public class EOSGiProjectManager implements Closeable {
    * @throws CoreException
    *           if anything happens.
    */
-  public synchronized void putOrOverride(final IMavenProjectFacade mavenProject,
+  public void putOrOverride(final IMavenProjectFacade mavenProject,
       final IProgressMonitor monitor) throws CoreException {
     EOSGiProject eosgiProject = eosgiProjects.get(mavenProject.getProject());
-    if (eosgiProject != null) {
-      checkEOSGiVMManagerUpToDate();
-      eosgiProject.refresh(mavenProject, monitor);
-    } else {
-      resolveProject(mavenProject, monitor);
+    if (eosgiProject == null) {
+      eosgiProject = resolveProject(mavenProject, monitor);
+
+      // The project might have been resolved concurrently with an older facade
+      if (eosgiProject.getMavenProjectFacade() == mavenProject) {
+        return;
+      }
     }
+    checkEOSGiVMManagerUpToDate();
+    eosgiProject.refresh(mavenProject, monitor);
+    updateRunningStates(Collections.singleton(eosgiProject));
   }
 
   public void remove(final IProject project) {
@@ -195,15 +321,111 @@ public class EOSGiProjectManager implements Closeable {
     labelProviders.remove(labelProvider);
   }
 
+  /**
+   * Resolves an eosgi project if it is not resolved yet. If the project is being resolved by
+   * someone else, the call waits for that resolution.
+   *
+   * @param project
+   *          The eclipse project.
+   * @param monitor
+   *          The monitor to show progress.
+   * @throws CoreException
+   *           if something happens.
+   */
+  public void resolveIfAbsent(final IProject project, final IProgressMonitor monitor)
+      throws CoreException {
+
+    if (eosgiProjects.containsKey(project) || !project.isOpen()
+        || !project.hasNature(EOSGiNature.NATURE_ID)) {
+      return;
+    }
+
+    IMavenProjectFacade mavenProject = MavenPlugin.getMavenProjectRegistry().getProject(project);
+    if (mavenProject == null) {
+      return;
+    }
+
+    resolveProject(mavenProject, monitor);
+  }
+
+  /**
+   * Resolves a project that is not managed yet. Only one thread resolves the same project at the
+   * same time, the other threads wait for the result of that thread. Different projects are
+   * resolved parallel.
+   *
+   * @param mavenProject
+   *          The m2e project.
+   * @param monitor
+   *          The monitor to show progress.
+   * @return The resolved eosgi project that might have been resolved with an other facade by an
+   *         other thread.
+   * @throws CoreException
+   *           if the resolution fails.
+   */
   private EOSGiProject resolveProject(final IMavenProjectFacade mavenProject,
       final IProgressMonitor monitor) throws CoreException {
 
-    checkEOSGiVMManagerUpToDate();
-    EOSGiProject eosgiProject =
-        new EOSGiProject(mavenProject, eosgiVMManager, monitor);
-    eosgiProjects.put(mavenProject.getProject(), eosgiProject);
+    IProject project = mavenProject.getProject();
+    CompletableFuture<EOSGiProject> resolution = new CompletableFuture<>();
+    CompletableFuture<EOSGiProject> concurrentResolution =
+        pendingResolutions.putIfAbsent(project, resolution);
 
-    return eosgiProject;
+    if (concurrentResolution != null) {
+      return waitForResolution(concurrentResolution);
+    }
+
+    try {
+      EOSGiProject eosgiProject = eosgiProjects.get(project);
+      if (eosgiProject == null) {
+        checkEOSGiVMManagerUpToDate();
+        eosgiProject = new EOSGiProject(mavenProject, eosgiVMManager, monitor);
+        eosgiProjects.put(project, eosgiProject);
+        updateRunningStates(Collections.singleton(eosgiProject));
+      }
+      resolution.complete(eosgiProject);
+      return eosgiProject;
+    } catch (CoreException | RuntimeException | Error e) {
+      resolution.completeExceptionally(e);
+      throw e;
+    } finally {
+      pendingResolutions.remove(project, resolution);
+    }
+  }
+
+  private void updateRunningStates(final Collection<EOSGiProject> projects) {
+    List<ExecutableEnvironment> executableEnvironments = new ArrayList<>();
+    for (EOSGiProject eosgiProject : projects) {
+      executableEnvironments.addAll(
+          eosgiProject.getExecutableEnvironmentContainer().getExecutableEnvironments());
+    }
+
+    Object[] runningStateChangedEnvironments =
+        runningEnvironmentIndex.update(executableEnvironments, eosgiVMManager).toArray();
+
+    if (runningStateChangedEnvironments.length == 0) {
+      return;
+    }
+    notifyLabelProviders(runningStateChangedEnvironments);
+  }
+
+  private EOSGiProject waitForResolution(final CompletableFuture<EOSGiProject> resolution)
+      throws CoreException {
+
+    try {
+      return resolution.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OperationCanceledException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CoreException) {
+        throw (CoreException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw (Error) cause;
+    }
   }
 
 }
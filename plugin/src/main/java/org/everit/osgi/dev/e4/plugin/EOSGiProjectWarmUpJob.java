@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.everit.osgi.dev.e4.plugin.util.CancelForwardingProgressMonitor;
+
+/**
+ * Resolves the eosgi projects of the workspace in the background after the plugin is started, so
+ * the environments are already known when the user expands a project in the Project Explorer for
+ * the first time. The projects are resolved parallel with a limited number of threads. Projects
+ * that are already resolved (e.g. due to an expanded tree node) are skipped.
+ */
+public class EOSGiProjectWarmUpJob extends Job {
+
+  private final EOSGiProjectManager eosgiProjectManager;
+
+  private final int maxThreadCount;
+
+  /**
+   * Constructor that sizes the worker pool to the available processors of the machine.
+   *
+   * @param eosgiProjectManager
+   *          The manager that resolves and stores the eosgi projects.
+   */
+  public EOSGiProjectWarmUpJob(final EOSGiProjectManager eosgiProjectManager) {
+    this(eosgiProjectManager, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param eosgiProjectManager
+   *          The manager that resolves and stores the eosgi projects.
+   * @param maxThreadCount
+   *          The maximum number of projects that are resolved at the same time.
+   */
+  public EOSGiProjectWarmUpJob(final EOSGiProjectManager eosgiProjectManager,
+      final int maxThreadCount) {
+    super("Resolving EOSGi projects");
+    this.eosgiProjectManager = eosgiProjectManager;
+    this.maxThreadCount = Math.max(1, maxThreadCount);
+    setPriority(Job.LONG);
+  }
+
+  private List<IProject> collectEOSGiProjects() {
+    List<IProject> result = new ArrayList<>();
+    for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+      try {
+        if (project.isOpen() && project.hasNature(EOSGiNature.NATURE_ID)) {
+          result.add(project);
+        }
+      } catch (CoreException e) {
+        EOSGiEclipsePlugin.getDefault().getEOSGiLog()
+            .warning("Cannot check the nature of project: " + project.getName(), e);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  protected IStatus run(final IProgressMonitor monitor) {
+    List<IProject> projects = collectEOSGiProjects();
+    if (projects.isEmpty()) {
+      return Status.OK_STATUS;
+    }
+
+    SubMonitor subMonitor = SubMonitor.convert(monitor, getName(), projects.size());
+
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(Math.min(maxThreadCount, projects.size()));
+
+    CompletionService<IProject> completionService =
+        new ExecutorCompletionService<>(executorService);
+
+    try {
+      for (IProject project : projects) {
+        completionService.submit(() -> {
+          SubMonitor projectMonitor = SubMonitor
+              .convert(new CancelForwardingProgressMonitor(monitor), project.getName(), 1);
+          if (!projectMonitor.isCanceled()) {
+            eosgiProjectManager.resolveIfAbsent(project, projectMonitor.split(1));
+          }
+          return project;
+        });
+      }
+
+      for (int i = 0, n = projects.size(); i < n; i++) {
+        Future<IProject> future = completionService.take();
+        try {
+          IProject project = future.get();
+          subMonitor.subTask(project.getName());
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof OperationCanceledException) {
+            return Status.CANCEL_STATUS;
+          }
+          EOSGiEclipsePlugin.getDefault().getEOSGiLog()
+              .warning("Error during resolving EOSGi project in the background", e.getCause());
+        }
+        subMonitor.worked(1);
+
+        if (monitor.isCanceled()) {
+          return Status.CANCEL_STATUS;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Status.CANCEL_STATUS;
+    } finally {
+      executorService.shutdownNow();
+    }
+    return Status.OK_STATUS;
+  }
+}
@@ -16,6 +16,7 @@
 package org.everit.osgi.dev.e4.plugin;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -97,6 +98,8 @@ public final class ExecutableEnvironment implements Comparable<ExecutableEnviron
 
   private final Collection<GAV> additionalArtifactGAVs;
 
+  private final File canonicalRootFolder;
+
   private final boolean defaultExecution;
 
   private final String environmentId;
@@ -117,6 +120,7 @@ public final class ExecutableEnvironment implements Comparable<ExecutableEnviron
     this.defaultExecution = Objects.requireNonNull(builder.defaultExecution);
     this.eosgiProject = Objects.requireNonNull(builder.eosgiProject);
     this.rootFolder = Objects.requireNonNull(builder.rootFolder);
+    this.canonicalRootFolder = resolveCanonicalFile(rootFolder);
     this.testResultFolder = Objects.requireNonNull(builder.testResultFolder);
     this.shutdownTimeout = Objects.requireNonNull(builder.shutdownTimeout);
     this.additionalArtifactGAVs =
@@ -183,6 +187,10 @@ public final class ExecutableEnvironment implements Comparable<ExecutableEnviron
     return additionalArtifactGAVs;
   }
 
+  public File getCanonicalRootFolder() {
+    return canonicalRootFolder;
+  }
+
   public String getEnvironmentId() {
     return environmentId;
   }
@@ -223,4 +231,12 @@ public final class ExecutableEnvironment implements Comparable<ExecutableEnviron
     return defaultExecution;
   }
 
+  private File resolveCanonicalFile(final File file) {
+    try {
+      return file.getCanonicalFile();
+    } catch (IOException e) {
+      return file.getAbsoluteFile();
+    }
+  }
+
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.debug.core.DebugEvent;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.IDebugEventSetListener;
+import org.eclipse.debug.core.model.IProcess;
+import org.everit.osgi.dev.dist.util.attach.EOSGiVMManager;
+
+/**
+ * Refreshes the {@link EOSGiVMManager} when JVMs appear or disappear on the machine instead of
+ * attaching to all of the JVMs periodically. Changes are detected by
+ * <ul>
+ * <li>watching the hsperfdata folder of the current user where every JVM creates a file,</li>
+ * <li>listening to the process creation and termination events of Eclipse launches.</li>
+ * </ul>
+ * A periodic refresh is still done as a fallback. Its period is doubled after each refresh that
+ * was not caused by an event, up to a maximum, unless the JVMs cannot be watched and there are
+ * running EOSGi environments.
+ */
+public class JVMStateTracker implements Closeable {
+
+  private static final long BASE_REFRESH_PERIOD = 1000;
+
+  /**
+   * Time to wait after a change event before refreshing, so bursts of events are coalesced and the
+   * new JVM has time to initialize the Attach API.
+   */
+  private static final long EVENT_DEBOUNCE_PERIOD = 300;
+
+  private static final long MAX_REFRESH_PERIOD = 30000;
+
+  private static WatchService createHsperfdataWatchService() {
+    // On Linux the JVMs always use /tmp, even if java.io.tmpdir is set to another folder. On
+    // Windows and macOS they use the temp directory of the user ($TMPDIR under /var/folders on
+    // macOS) that java.io.tmpdir points to.
+    String tempDirectory = Platform.OS_LINUX.equals(Platform.getOS())
+        ? "/tmp"
+        : System.getProperty("java.io.tmpdir");
+    File hsperfdataFolder =
+        new File(tempDirectory, "hsperfdata_" + System.getProperty("user.name"));
+
+    if (!hsperfdataFolder.isDirectory()) {
+      return null;
+    }
+
+    WatchService watchService = null;
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+      hsperfdataFolder.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.OVERFLOW);
+      return watchService;
+    } catch (IOException | RuntimeException e) {
+      EOSGiEclipsePlugin.getDefault().getEOSGiLog()
+          .warning("Cannot watch JVMs via folder " + hsperfdataFolder + ", falling back to polling",
+              e);
+      closeWatchService(watchService);
+      return null;
+    }
+  }
+
+  private static void closeWatchService(final WatchService watchService) {
+    if (watchService == null) {
+      return;
+    }
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      EOSGiEclipsePlugin.getDefault().getEOSGiLog().warning("Cannot close watch service", e);
+    }
+  }
+
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  private final IDebugEventSetListener debugEventListener = (events) -> {
+    for (DebugEvent event : events) {
+      int kind = event.getKind();
+      if (event.getSource() instanceof IProcess
+          && (kind == DebugEvent.CREATE || kind == DebugEvent.TERMINATE)) {
+        requestRefresh();
+        return;
+      }
+    }
+  };
+
+  private final EOSGiVMManager eosgiVMManager;
+
+  /**
+   * The time of the last refresh request in milliseconds.
+   */
+  private long lastRequestTime = 0;
+
+  private final Object refreshLock = new Object();
+
+  private boolean refreshRequested = false;
+
+  private volatile boolean watching = false;
+
+  private WatchService watchService;
+
+  public JVMStateTracker(final EOSGiVMManager eosgiVMManager) {
+    this.eosgiVMManager = eosgiVMManager;
+  }
+
+  @Override
+  public void close() {
+    if (closed.getAndSet(true)) {
+      return;
+    }
+    DebugPlugin debugPlugin = DebugPlugin.getDefault();
+    if (debugPlugin != null) {
+      debugPlugin.removeDebugEventListener(debugEventListener);
+    }
+    closeWatchService(watchService);
+    synchronized (refreshLock) {
+      refreshLock.notifyAll();
+    }
+  }
+
+  private long nextRefreshPeriod(final long currentPeriod, final boolean causedByEvent) {
+    if (causedByEvent) {
+      return BASE_REFRESH_PERIOD;
+    }
+    if (!watching && !eosgiVMManager.getRuntimeInformations().isEmpty()) {
+      // Nothing would tell us if the running environments stop
+      return BASE_REFRESH_PERIOD;
+    }
+    return Math.min(currentPeriod * 2, MAX_REFRESH_PERIOD);
+  }
+
+  /**
+   * Starts tracking the JVMs on background threads.
+   */
+  public void open() {
+    watchService = createHsperfdataWatchService();
+    if (watchService != null) {
+      watching = true;
+      new Thread(this::watchHsperfdataFolder, "EOSGi JVM folder watcher").start();
+    }
+    DebugPlugin.getDefault().addDebugEventListener(debugEventListener);
+    requestRefresh();
+    new Thread(this::refreshOnChanges, "EOSGi JVM state tracker").start();
+  }
+
+  private void refreshOnChanges() {
+    long refreshPeriod = BASE_REFRESH_PERIOD;
+    try {
+      while (!closed.get()) {
+        boolean causedByEvent = waitForRefresh(refreshPeriod);
+        if (!closed.get()) {
+          try {
+            eosgiVMManager.refresh();
+          } catch (RuntimeException e) {
+            EOSGiEclipsePlugin.getDefault().getEOSGiLog()
+                .error("Error during querying the state of running JVMs", e);
+          }
+          refreshPeriod = nextRefreshPeriod(refreshPeriod, causedByEvent);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Requests a refresh of the JVM states as soon as possible. Multiple requests that arrive in a
+   * short period are handled with one refresh.
+   */
+  public void requestRefresh() {
+    synchronized (refreshLock) {
+      refreshRequested = true;
+      lastRequestTime = System.currentTimeMillis();
+      refreshLock.notifyAll();
+    }
+  }
+
+  private boolean waitForRefresh(final long refreshPeriod) throws InterruptedException {
+    synchronized (refreshLock) {
+      if (!refreshRequested && !closed.get()) {
+        refreshLock.wait(refreshPeriod);
+      }
+      if (!refreshRequested) {
+        return false;
+      }
+
+      // New requests wake up the thread, so it waits again until no request arrives for the
+      // debounce period
+      long remainingDebounceTime =
+          lastRequestTime + EVENT_DEBOUNCE_PERIOD - System.currentTimeMillis();
+      while (remainingDebounceTime > 0 && !closed.get()) {
+        refreshLock.wait(Math.min(remainingDebounceTime, EVENT_DEBOUNCE_PERIOD));
+        remainingDebounceTime =
+            lastRequestTime + EVENT_DEBOUNCE_PERIOD - System.currentTimeMillis();
+      }
+      refreshRequested = false;
+      return true;
+    }
+  }
+
+  private void watchHsperfdataFolder() {
+    try {
+      while (!closed.get()) {
+        WatchKey watchKey = watchService.take();
+        watchKey.pollEvents();
+        requestRefresh();
+        if (!watchKey.reset()) {
+          watching = false;
+          EOSGiEclipsePlugin.getDefault().getEOSGiLog()
+              .warning("Watching JVM folder stopped, falling back to polling");
+          return;
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.everit.osgi.dev.dist.util.attach.EOSGiVMManager;
+
+/**
+ * Stores which environments are running, keyed by the environment id and the canonical root folder
+ * of the environment. The index is updated when the state of the JVMs change, so the running
+ * state of an environment can be queried without asking the {@link EOSGiVMManager} and without
+ * allocating any object.
+ */
+public class RunningEnvironmentIndex {
+
+  private final Map<String, Set<File>> runningRootFoldersByEnvironmentId =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Checks whether an environment was running when the index was updated last time.
+   *
+   * @param executableEnvironment
+   *          The environment.
+   * @return <code>true</code> if the environment is running.
+   */
+  public boolean isRunning(final ExecutableEnvironment executableEnvironment) {
+    Set<File> rootFolders =
+        runningRootFoldersByEnvironmentId.get(executableEnvironment.getEnvironmentId());
+
+    return rootFolders != null
+        && rootFolders.contains(executableEnvironment.getCanonicalRootFolder());
+  }
+
+  private void setRunning(final ExecutableEnvironment executableEnvironment,
+      final boolean running) {
+
+    String environmentId = executableEnvironment.getEnvironmentId();
+    File rootFolder = executableEnvironment.getCanonicalRootFolder();
+    if (running) {
+      runningRootFoldersByEnvironmentId
+          .computeIfAbsent(environmentId, (key) -> ConcurrentHashMap.newKeySet()).add(rootFolder);
+    } else {
+      Set<File> rootFolders = runningRootFoldersByEnvironmentId.get(environmentId);
+      if (rootFolders != null) {
+        rootFolders.remove(rootFolder);
+      }
+    }
+  }
+
+  /**
+   * Queries the running state of the environments from the vm manager and updates the index.
+   *
+   * @param executableEnvironments
+   *          The environments that should be checked.
+   * @param eosgiVMManager
+   *          The vm manager that knows the running JVMs.
+   * @return The environments whose running state changed since the previous update.
+   */
+  public synchronized List<ExecutableEnvironment> update(
+      final Collection<ExecutableEnvironment> executableEnvironments,
+      final EOSGiVMManager eosgiVMManager) {
+
+    // Multiple environments might have the same key, so the index is modified only after all
+    // changes are collected
+    Map<ExecutableEnvironment, Boolean> changedRunningStates = new LinkedHashMap<>();
+    for (ExecutableEnvironment executableEnvironment : executableEnvironments) {
+      boolean running = !eosgiVMManager.getRuntimeInformations(
+          executableEnvironment.getEnvironmentId(), executableEnvironment.getRootFolder())
+          .isEmpty();
+
+      if (running != isRunning(executableEnvironment)) {
+        changedRunningStates.put(executableEnvironment, running);
+      }
+    }
+
+    for (Entry<ExecutableEnvironment, Boolean> entry : changedRunningStates.entrySet()) {
+      setRunning(entry.getKey(), entry.getValue());
+    }
+    return new ArrayList<>(changedRunningStates.keySet());
+  }
+}
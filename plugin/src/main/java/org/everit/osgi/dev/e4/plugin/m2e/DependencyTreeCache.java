@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.m2e;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.m2e.core.MavenPlugin;
+import org.eclipse.m2e.core.embedder.ArtifactKey;
+import org.eclipse.m2e.core.project.IMavenProjectChangedListener;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.eclipse.m2e.core.project.MavenProjectChangedEvent;
+import org.everit.osgi.dev.e4.plugin.GAV;
+import org.everit.osgi.dev.e4.plugin.util.DAGFlattener;
+import org.everit.osgi.dev.e4.plugin.util.DAGFlattener.KeyWithNodes;
+import org.everit.osgi.dev.e4.plugin.util.DependencyNodeChildResolver;
+
+/**
+ * Caches the flattened dependency trees of projects, so the dependency graph is not collected
+ * again for every dist if the poms did not change. A cached tree belongs to a facade instance, as
+ * m2e creates a new facade every time the pom of a project is read again. As the tree also
+ * depends on the poms of the dependencies, a cached tree is dropped when m2e reports a change of
+ * the project itself or of any workspace project that appears in the tree.
+ */
+public class DependencyTreeCache implements IMavenProjectChangedListener {
+
+  /**
+   * DTO.
+   */
+  private static class FlattenedDependencyTree {
+
+    final Set<GAV> gavs;
+
+    final List<KeyWithNodes<GAV, DependencyNode>> keyWithNodesList;
+
+    final IMavenProjectFacade mavenProjectFacade;
+
+    FlattenedDependencyTree(final IMavenProjectFacade mavenProjectFacade,
+        final List<KeyWithNodes<GAV, DependencyNode>> keyWithNodesList) {
+      this.mavenProjectFacade = mavenProjectFacade;
+      this.keyWithNodesList = Collections.unmodifiableList(keyWithNodesList);
+      this.gavs = new HashSet<>();
+      for (KeyWithNodes<GAV, DependencyNode> keyWithNodes : keyWithNodesList) {
+        gavs.add(keyWithNodes.key);
+      }
+    }
+  }
+
+  private static final DAGFlattener<GAV, DependencyNode> DEPENDENCY_TREE_FLATTENER =
+      new DAGFlattener<>((dependencyNode) -> new GAV(dependencyNode),
+          new DependencyNodeChildResolver());
+
+  private static void addChangedProject(final IMavenProjectFacade mavenProjectFacade,
+      final Set<IProject> projects, final Set<GAV> gavs) {
+
+    if (mavenProjectFacade != null) {
+      projects.add(mavenProjectFacade.getProject());
+      ArtifactKey artifactKey = mavenProjectFacade.getArtifactKey();
+      gavs.add(new GAV(artifactKey.getGroupId(), artifactKey.getArtifactId(),
+          artifactKey.getVersion()));
+    }
+  }
+
+  /**
+   * Incremented on every change event, so a tree that was being collected during a change is not
+   * kept in the cache.
+   */
+  private final AtomicLong changeCount = new AtomicLong();
+
+  private final Map<IProject, FlattenedDependencyTree> flattenedDependencyTreesByProject =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Gets the flattened dependency tree of a project from the cache or collects it if it is not
+   * cached yet. Children are after their parents in the returned list.
+   *
+   * @param mavenProjectFacade
+   *          The facade of the project.
+   * @param monitor
+   *          The monitor to use if the dependency tree has to be collected.
+   * @return The unmodifiable flattened dependency tree.
+   * @throws CoreException
+   *           if the dependency tree cannot be collected.
+   */
+  public List<KeyWithNodes<GAV, DependencyNode>> getFlattenedDependencyTree(
+      final IMavenProjectFacade mavenProjectFacade, final IProgressMonitor monitor)
+      throws CoreException {
+
+    IProject project = mavenProjectFacade.getProject();
+    FlattenedDependencyTree flattenedDependencyTree =
+        flattenedDependencyTreesByProject.get(project);
+
+    if (flattenedDependencyTree != null
+        && flattenedDependencyTree.mavenProjectFacade == mavenProjectFacade) {
+      return flattenedDependencyTree.keyWithNodesList;
+    }
+
+    long changeCountBeforeCollection = changeCount.get();
+
+    DependencyNode rootNode = MavenPlugin.getMavenModelManager().readDependencyTree(
+        mavenProjectFacade, mavenProjectFacade.getMavenProject(monitor), null, monitor);
+
+    flattenedDependencyTree = new FlattenedDependencyTree(mavenProjectFacade,
+        DEPENDENCY_TREE_FLATTENER.flatten(rootNode));
+
+    flattenedDependencyTreesByProject.put(project, flattenedDependencyTree);
+    if (changeCount.get() != changeCountBeforeCollection) {
+      flattenedDependencyTreesByProject.remove(project, flattenedDependencyTree);
+    }
+    return flattenedDependencyTree.keyWithNodesList;
+  }
+
+  @Override
+  public void mavenProjectChanged(final MavenProjectChangedEvent[] events,
+      final IProgressMonitor monitor) {
+
+    if (events.length == 0) {
+      return;
+    }
+
+    changeCount.incrementAndGet();
+
+    Set<IProject> changedProjects = new HashSet<>();
+    Set<GAV> changedGAVs = new HashSet<>();
+    for (MavenProjectChangedEvent event : events) {
+      addChangedProject(event.getOldMavenProject(), changedProjects, changedGAVs);
+      addChangedProject(event.getMavenProject(), changedProjects, changedGAVs);
+    }
+
+    flattenedDependencyTreesByProject.entrySet().removeIf((entry) -> changedProjects
+        .contains(entry.getKey()) || !Collections.disjoint(entry.getValue().gavs, changedGAVs));
+  }
+
+}
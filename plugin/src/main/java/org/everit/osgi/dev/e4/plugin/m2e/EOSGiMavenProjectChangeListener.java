@@ -15,12 +15,20 @@
  */
 package org.everit.osgi.dev.e4.plugin.m2e;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.commons.lang3.ArrayUtils;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.m2e.core.project.IMavenProjectChangedListener;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
@@ -31,10 +39,32 @@ import org.everit.osgi.dev.e4.plugin.EOSGiEclipsePlugin;
 import org.everit.osgi.dev.e4.plugin.EOSGiNature;
 
 /**
- * Adds or removes EOSGi Nature and refreshes EOSGi information.
+ * Adds or removes EOSGi Nature and refreshes EOSGi information. The changed projects are processed
+ * in a background job that starts after the events stopped arriving for a short period, so a burst
+ * of events (e.g. "Update Maven Project" on the whole workspace) refreshes every project only once
+ * and the notification thread of m2e is not blocked.
  */
 public class EOSGiMavenProjectChangeListener implements IMavenProjectChangedListener {
 
+  private static final long REFRESH_DELAY = 500;
+
+  /**
+   * The latest facades of the changed projects that are not processed yet.
+   */
+  private final Map<IProject, IMavenProjectFacade> pendingMavenProjects = new LinkedHashMap<>();
+
+  private final Job refreshJob;
+
+  /**
+   * Constructor.
+   */
+  public EOSGiMavenProjectChangeListener() {
+    refreshJob = Job.create("Refreshing EOSGi projects", (monitor) -> {
+      refreshPendingMavenProjects(monitor);
+      return Status.OK_STATUS;
+    });
+  }
+
   private void addEosgiNature(final IProgressMonitor monitor, final IProject project)
       throws CoreException {
 
@@ -61,39 +91,76 @@ public class EOSGiMavenProjectChangeListener implements IMavenProjectChangedList
       return;
     }
 
-    for (MavenProjectChangedEvent event : events) {
-      IMavenProjectFacade mavenProject = event.getMavenProject();
-
-      if (mavenProject != null) {
-        try {
-          boolean eosgiProject = M2EUtil.hasEOSGiMavenPlugin(mavenProject.getMavenProject(monitor));
-          IProject project = mavenProject.getProject();
-          boolean hasNature = project.hasNature(EOSGiNature.NATURE_ID);
-
-          if (eosgiProject && !hasNature) {
-            addEosgiNature(monitor, project);
-          } else if (!eosgiProject && hasNature) {
-            removeProjectNature(project, monitor);
-            EOSGiEclipsePlugin.getDefault().getEOSGiManager().remove(project);
-          }
-
-          if (eosgiProject) {
-            EOSGiEclipsePlugin.getDefault().getEOSGiManager().putOrOverride(mavenProject, monitor);
-          }
-        } catch (CoreException e) {
-          IStatus status = e.getStatus();
-          EOSGiEclipsePlugin.getDefault().getLog().log(status);
-          Display.getDefault().asyncExec(() -> {
-            Shell shell = new Shell();
-            ErrorDialog.openError(shell, "Error",
-                "Could not refresh project by EOSGi Eclipse plugin: "
-                    + mavenProject.getProject().getName(),
-                status);
-          });
+    synchronized (pendingMavenProjects) {
+      for (MavenProjectChangedEvent event : events) {
+        IMavenProjectFacade mavenProject = event.getMavenProject();
+        if (mavenProject != null) {
+          pendingMavenProjects.put(mavenProject.getProject(), mavenProject);
         }
       }
+      if (pendingMavenProjects.isEmpty()) {
+        return;
+      }
+    }
+    refreshJob.schedule(REFRESH_DELAY);
+  }
+
+  private void refreshMavenProject(final IMavenProjectFacade mavenProject,
+      final IProgressMonitor monitor) {
+    try {
+      boolean eosgiProject = M2EUtil.hasEOSGiMavenPlugin(mavenProject.getMavenProject(monitor));
+      IProject project = mavenProject.getProject();
+      boolean hasNature = project.hasNature(EOSGiNature.NATURE_ID);
+
+      if (eosgiProject && !hasNature) {
+        addEosgiNature(monitor, project);
+      } else if (!eosgiProject && hasNature) {
+        removeProjectNature(project, monitor);
+        EOSGiEclipsePlugin.getDefault().getEOSGiManager().remove(project);
+      }
+
+      if (eosgiProject) {
+        EOSGiEclipsePlugin.getDefault().getEOSGiManager().putOrOverride(mavenProject, monitor);
+      }
+    } catch (CoreException e) {
+      IStatus status = e.getStatus();
+      EOSGiEclipsePlugin.getDefault().getLog().log(status);
+      Display.getDefault().asyncExec(() -> {
+        Shell shell = new Shell();
+        ErrorDialog.openError(shell, "Error",
+            "Could not refresh project by EOSGi Eclipse plugin: "
+                + mavenProject.getProject().getName(),
+            status);
+      });
+    }
+  }
+
+  private void refreshPendingMavenProjects(final IProgressMonitor monitor) {
+    List<IMavenProjectFacade> mavenProjects;
+    synchronized (pendingMavenProjects) {
+      mavenProjects = new ArrayList<>(pendingMavenProjects.values());
+      pendingMavenProjects.clear();
     }
 
+    SubMonitor subMonitor = SubMonitor.convert(monitor, mavenProjects.size());
+    int processedCount = 0;
+    try {
+      for (IMavenProjectFacade mavenProject : mavenProjects) {
+        if (EOSGiEclipsePlugin.getDefault() == null) {
+          return;
+        }
+        refreshMavenProject(mavenProject, subMonitor.split(1));
+        processedCount++;
+      }
+    } finally {
+      // Projects that were not processed due to cancellation are refreshed with the next change
+      synchronized (pendingMavenProjects) {
+        for (IMavenProjectFacade mavenProject : mavenProjects.subList(processedCount,
+            mavenProjects.size())) {
+          pendingMavenProjects.putIfAbsent(mavenProject.getProject(), mavenProject);
+        }
+      }
+    }
   }
 
   private void removeProjectNature(final IProject project, final IProgressMonitor monitor)
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.m2e;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.lifecycle.MavenExecutionPlan;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.m2e.core.MavenPlugin;
+import org.eclipse.m2e.core.project.IMavenProjectChangedListener;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.eclipse.m2e.core.project.MavenProjectChangedEvent;
+
+/**
+ * Caches the calculated execution plans of goals by project, so the mojo descriptors and the
+ * plugins are not resolved again for every refresh, dist and sync-back. m2e creates a new facade
+ * every time the pom of a project is read again, so the cached plans belong to a facade instance
+ * and they are dropped when a different facade of the same project is used or when m2e reports a
+ * change of the project.
+ */
+public class ExecutionPlanCache implements IMavenProjectChangedListener {
+
+  /**
+   * DTO.
+   */
+  private static class ProjectExecutionPlans {
+
+    final Map<String, MavenExecutionPlan> executionPlansByGoal = new ConcurrentHashMap<>();
+
+    final IMavenProjectFacade mavenProjectFacade;
+
+    ProjectExecutionPlans(final IMavenProjectFacade mavenProjectFacade) {
+      this.mavenProjectFacade = mavenProjectFacade;
+    }
+  }
+
+  private final Map<IProject, ProjectExecutionPlans> executionPlansByProject =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Gets the execution plan of a goal from the cache or calculates it if it is not cached yet.
+   *
+   * @param mavenProjectFacade
+   *          The facade of the project.
+   * @param mavenProject
+   *          The maven project that belongs to the facade.
+   * @param goal
+   *          The goal, e.g.: eosgi:dist@executionId.
+   * @param monitor
+   *          The monitor to use if the execution plan has to be calculated.
+   * @return The execution plan.
+   * @throws CoreException
+   *           if the execution plan cannot be calculated.
+   */
+  public MavenExecutionPlan getExecutionPlan(final IMavenProjectFacade mavenProjectFacade,
+      final MavenProject mavenProject, final String goal, final IProgressMonitor monitor)
+      throws CoreException {
+
+    ProjectExecutionPlans projectExecutionPlans =
+        executionPlansByProject.compute(mavenProjectFacade.getProject(),
+            (project, existing) -> (existing != null
+                && existing.mavenProjectFacade == mavenProjectFacade)
+                    ? existing
+                    : new ProjectExecutionPlans(mavenProjectFacade));
+
+    MavenExecutionPlan executionPlan = projectExecutionPlans.executionPlansByGoal.get(goal);
+    if (executionPlan != null) {
+      return executionPlan;
+    }
+
+    executionPlan = MavenPlugin.getMaven().calculateExecutionPlan(mavenProject,
+        Collections.singletonList(goal), true, monitor);
+
+    MavenExecutionPlan concurrentExecutionPlan =
+        projectExecutionPlans.executionPlansByGoal.putIfAbsent(goal, executionPlan);
+
+    return (concurrentExecutionPlan != null) ? concurrentExecutionPlan : executionPlan;
+  }
+
+  @Override
+  public void mavenProjectChanged(final MavenProjectChangedEvent[] events,
+      final IProgressMonitor monitor) {
+
+    for (MavenProjectChangedEvent event : events) {
+      removeProject(event.getOldMavenProject());
+      removeProject(event.getMavenProject());
+    }
+  }
+
+  private void removeProject(final IMavenProjectFacade mavenProjectFacade) {
+    if (mavenProjectFacade != null) {
+      executionPlansByProject.remove(mavenProjectFacade.getProject());
+    }
+  }
+
+}
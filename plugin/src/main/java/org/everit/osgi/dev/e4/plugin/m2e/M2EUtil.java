@@ -16,9 +16,12 @@
 package org.everit.osgi.dev.e4.plugin.m2e;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import org.apache.maven.artifact.Artifact;
@@ -27,6 +30,7 @@ import org.apache.maven.model.Plugin;
 import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.repository.WorkspaceReader;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.ICoreRunnable;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -40,6 +44,7 @@ import org.eclipse.m2e.core.internal.MavenPluginActivator;
 import org.eclipse.m2e.core.internal.embedder.MavenProjectMutableState;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.everit.osgi.dev.e4.plugin.EOSGiEclipsePlugin;
+import org.everit.osgi.dev.e4.plugin.m2e.MavenExecutionContextPool.PooledContext;
 import org.osgi.framework.Version;
 import org.osgi.framework.VersionRange;
 
@@ -140,29 +145,89 @@ public final class M2EUtil {
   public static <V> V executeInContext(final IMavenProjectFacade facade,
       final MavenExecutionContextModifiers modifications,
       final ICallable<V> callable, final IProgressMonitor monitor) throws CoreException {
+    return executeInContext(facade, modifications, callable, null, monitor);
+  }
+
+  /**
+   * Executes a function in a special context where artifacts are read from the eclipse workspace if
+   * they are the result files of any projects. The execution context is borrowed from the passed
+   * pool.
+   *
+   * @param facade
+   *          The maven facade.
+   * @param modifications
+   *          Possible modifications on the execution context.
+   * @param callable
+   *          The function to execute in the created maven execution context.
+   * @param contextPool
+   *          The pool of the operation that reuses the execution contexts or <code>null</code> if
+   *          a new execution context should be created.
+   * @param monitor
+   *          The monitor to show progress.
+   * @return The result of the executed function.
+   * @throws CoreException
+   *           if something happens.
+   */
+  public static <V> V executeInContext(final IMavenProjectFacade facade,
+      final MavenExecutionContextModifiers modifications, final ICallable<V> callable,
+      final MavenExecutionContextPool contextPool, final IProgressMonitor monitor)
+      throws CoreException {
+
+    if (contextPool == null) {
+      IMavenExecutionContext executionContext = createExecutionContext(facade, monitor);
+      return executeInContext(executionContext,
+          executionContext.getExecutionRequest().getWorkspaceReader(), facade, modifications,
+          callable, monitor);
+    }
+
+    PooledContext pooledContext = contextPool.borrow(facade, monitor);
+    try {
+      return executeInContext(pooledContext.context, pooledContext.originalWorkspaceReader,
+          facade, modifications, callable, monitor);
+    } finally {
+      contextPool.release(pooledContext);
+    }
+  }
+
+  private static <V> V executeInContext(final IMavenExecutionContext executionContext,
+      final WorkspaceReader originalWorkspaceReader, final IMavenProjectFacade facade,
+      final MavenExecutionContextModifiers modifications, final ICallable<V> callable,
+      final IProgressMonitor monitor) throws CoreException {
 
-    IMavenExecutionContext executionContext = createExecutionContext(facade, monitor);
     MavenExecutionRequest executionRequest = executionContext.getExecutionRequest();
     executionRequest.setStartTime(new Date());
     if (modifications != null && modifications.workspaceReaderReplacer != null) {
-      executionRequest.setWorkspaceReader(modifications.workspaceReaderReplacer
-          .apply(executionRequest.getWorkspaceReader()));
+      executionRequest.setWorkspaceReader(
+          modifications.workspaceReaderReplacer.apply(originalWorkspaceReader));
+    } else {
+      executionRequest.setWorkspaceReader(originalWorkspaceReader);
     }
 
-    return executionContext.execute(facade.getMavenProject(monitor),
-        (context, monitor1) -> {
-          if (modifications != null) {
-            if (modifications.systemPropertiesReplacer != null) {
-              executionRequest.setSystemProperties(modifications.systemPropertiesReplacer
-                  .apply(executionRequest.getSystemProperties()));
-            }
-            if (modifications.executionRequestDataModifier != null) {
-              modifications.executionRequestDataModifier.accept(executionRequest.getData());
+    // The request might be reused by a pool, so the modifications are reverted after the call
+    Properties originalSystemProperties = executionRequest.getSystemProperties();
+    Map<String, Object> originalData = new HashMap<>(executionRequest.getData());
+
+    try {
+      return executionContext.execute(facade.getMavenProject(monitor),
+          (context, monitor1) -> {
+            if (modifications != null) {
+              if (modifications.systemPropertiesReplacer != null) {
+                executionRequest.setSystemProperties(modifications.systemPropertiesReplacer
+                    .apply(executionRequest.getSystemProperties()));
+              }
+              if (modifications.executionRequestDataModifier != null) {
+                modifications.executionRequestDataModifier.accept(executionRequest.getData());
+              }
             }
-          }
 
-          return callable.call(context, monitor1);
-        }, monitor);
+            return callable.call(context, monitor1);
+          }, monitor);
+    } finally {
+      executionRequest.setSystemProperties(originalSystemProperties);
+      Map<String, Object> data = executionRequest.getData();
+      data.clear();
+      data.putAll(originalData);
+    }
   }
 
   /**
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.m2e;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.eclipse.aether.DefaultRepositoryCache;
+import org.eclipse.aether.RepositoryCache;
+import org.eclipse.aether.repository.WorkspaceReader;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.m2e.core.embedder.IMavenExecutionContext;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.eclipse.m2e.core.project.ResolverConfiguration;
+
+/**
+ * Reuses the maven execution contexts of the maven invocations during one dist or launch, so the
+ * execution request is not populated again for every packaged project. The contexts are not
+ * thread safe, therefore a context is borrowed for the time of one invocation and parallel
+ * invocations use different contexts. All of the contexts share the same repository cache.
+ *
+ * <p>
+ * Contexts are reused only between projects that have the same resolver configuration and the
+ * same multi-module project directory, as those are the settings of the execution request that
+ * come from the project. The pom file and the base directory of the request are replaced before
+ * each invocation.
+ *
+ * <p>
+ * A pool belongs to the dist or launch that created it and it is passed explicitly to the
+ * executeInContext calls of {@link M2EUtil} of that operation, so other maven invocations of the
+ * plugin never get the contexts of the pool.
+ */
+public final class MavenExecutionContextPool implements Closeable {
+
+  /**
+   * DTO.
+   */
+  static class PooledContext {
+
+    final IMavenExecutionContext context;
+
+    final String key;
+
+    /**
+     * The workspace reader of the request before any modification, so the modifiers of the
+     * different invocations do not wrap each other's workspace readers.
+     */
+    final WorkspaceReader originalWorkspaceReader;
+
+    PooledContext(final IMavenExecutionContext context, final String key,
+        final WorkspaceReader originalWorkspaceReader) {
+      this.context = context;
+      this.key = key;
+      this.originalWorkspaceReader = originalWorkspaceReader;
+    }
+  }
+
+  private static String resolveKey(final IMavenProjectFacade facade) {
+    ResolverConfiguration resolverConfiguration = facade.getResolverConfiguration();
+    File multiModuleProjectDirectory = resolveMultiModuleProjectDirectory(facade.getPomFile());
+
+    return resolverConfiguration.shouldResolveWorkspaceProjects() + "|"
+        + resolverConfiguration.getSelectedProfiles() + "|"
+        + resolverConfiguration.getLifecycleMappingId() + "|" + multiModuleProjectDirectory;
+  }
+
+  private static File resolveMultiModuleProjectDirectory(final File pomFile) {
+    File directory = pomFile.getAbsoluteFile().getParentFile();
+    while (directory != null) {
+      if (new File(directory, ".mvn").isDirectory()) {
+        return directory;
+      }
+      directory = directory.getParentFile();
+    }
+    return null;
+  }
+
+  private volatile boolean closed = false;
+
+  private final Map<String, Queue<PooledContext>> idleContextsByKey = new ConcurrentHashMap<>();
+
+  private final RepositoryCache repositoryCache = new DefaultRepositoryCache();
+
+  PooledContext borrow(final IMavenProjectFacade facade, final IProgressMonitor monitor)
+      throws CoreException {
+
+    String key = resolveKey(facade);
+    Queue<PooledContext> idleContexts = idleContextsByKey.get(key);
+    PooledContext pooledContext = (idleContexts != null) ? idleContexts.poll() : null;
+
+    if (pooledContext != null) {
+      File pomFile = facade.getPomFile();
+      MavenExecutionRequest executionRequest = pooledContext.context.getExecutionRequest();
+      executionRequest.setPom(pomFile);
+      executionRequest.setBaseDirectory(pomFile.getParentFile());
+      return pooledContext;
+    }
+
+    IMavenExecutionContext context = M2EUtil.createExecutionContext(facade, monitor);
+    MavenExecutionRequest executionRequest = context.getExecutionRequest();
+    executionRequest.setRepositoryCache(repositoryCache);
+    return new PooledContext(context, key, executionRequest.getWorkspaceReader());
+  }
+
+  /**
+   * Closes the pool. The contexts that are borrowed at the time of closing are dropped when they
+   * are released.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    idleContextsByKey.clear();
+  }
+
+  void release(final PooledContext pooledContext) {
+    if (closed) {
+      return;
+    }
+    idleContextsByKey.computeIfAbsent(pooledContext.key, (key) -> new ConcurrentLinkedQueue<>())
+        .offer(pooledContext);
+  }
+
+}
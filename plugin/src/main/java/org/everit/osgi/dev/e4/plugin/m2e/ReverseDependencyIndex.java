@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.m2e;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.m2e.core.embedder.ArtifactKey;
+import org.eclipse.m2e.core.project.IMavenProjectChangedListener;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.eclipse.m2e.core.project.MavenProjectChangedEvent;
+import org.everit.osgi.dev.e4.plugin.EOSGiEclipsePlugin;
+import org.everit.osgi.dev.e4.plugin.GAV;
+
+/**
+ * Index of the workspace projects by the artifacts that they depend on directly or transitively.
+ * The dependencies are read from the resolved artifacts of the maven projects that m2e keeps up
+ * to date, so no dependency graph is collected for the index.
+ *
+ * <p>
+ * A project is indexed when it is asked for explicitly or when m2e reports a change of it while
+ * its maven project is loaded. The index of a project is updated or dropped by the m2e change
+ * events afterwards.
+ */
+public class ReverseDependencyIndex implements IMavenProjectChangedListener {
+
+  private static GAV toGAV(final IMavenProjectFacade mavenProjectFacade) {
+    ArtifactKey artifactKey = mavenProjectFacade.getArtifactKey();
+    return new GAV(artifactKey.getGroupId(), artifactKey.getArtifactId(),
+        artifactKey.getVersion());
+  }
+
+  private final Map<IProject, Set<GAV>> dependencyGAVsByProject = new HashMap<>();
+
+  private final Map<GAV, Set<IProject>> dependentProjectsByGAV = new HashMap<>();
+
+  /**
+   * Gets the indexed projects that depend on a workspace project directly or transitively.
+   *
+   * @param mavenProjectFacade
+   *          The facade of the workspace project.
+   * @return The dependent projects.
+   */
+  public Set<IProject> getDependentProjects(final IMavenProjectFacade mavenProjectFacade) {
+    return getDependentProjects(toGAV(mavenProjectFacade));
+  }
+
+  /**
+   * Gets the indexed projects that depend on an artifact directly or transitively.
+   *
+   * @param gav
+   *          The coordinates of the artifact with base version.
+   * @return The dependent projects.
+   */
+  public synchronized Set<IProject> getDependentProjects(final GAV gav) {
+    Set<IProject> dependentProjects = dependentProjectsByGAV.get(gav);
+    if (dependentProjects == null) {
+      return Collections.emptySet();
+    }
+    return new HashSet<>(dependentProjects);
+  }
+
+  /**
+   * Indexes the dependencies of a project.
+   *
+   * @param mavenProjectFacade
+   *          The facade of the project.
+   * @param monitor
+   *          The monitor to use if the maven project has to be loaded.
+   * @throws CoreException
+   *           if the maven project cannot be loaded.
+   */
+  public void index(final IMavenProjectFacade mavenProjectFacade,
+      final IProgressMonitor monitor) throws CoreException {
+
+    MavenProject mavenProject = mavenProjectFacade.getMavenProject(monitor);
+    Set<GAV> dependencyGAVs = new HashSet<>();
+    for (Artifact artifact : mavenProject.getArtifacts()) {
+      dependencyGAVs.add(
+          new GAV(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion()));
+    }
+    put(mavenProjectFacade.getProject(), dependencyGAVs);
+  }
+
+  /**
+   * Indexes the dependencies of a project if they are not indexed yet.
+   *
+   * @param mavenProjectFacade
+   *          The facade of the project.
+   * @param monitor
+   *          The monitor to use if the maven project has to be loaded.
+   * @throws CoreException
+   *           if the maven project cannot be loaded.
+   */
+  public void indexIfAbsent(final IMavenProjectFacade mavenProjectFacade,
+      final IProgressMonitor monitor) throws CoreException {
+
+    if (!isIndexed(mavenProjectFacade.getProject())) {
+      index(mavenProjectFacade, monitor);
+    }
+  }
+
+  private synchronized boolean isIndexed(final IProject project) {
+    return dependencyGAVsByProject.containsKey(project);
+  }
+
+  @Override
+  public void mavenProjectChanged(final MavenProjectChangedEvent[] events,
+      final IProgressMonitor monitor) {
+
+    for (MavenProjectChangedEvent event : events) {
+      IMavenProjectFacade oldMavenProject = event.getOldMavenProject();
+      IMavenProjectFacade newMavenProject = event.getMavenProject();
+
+      boolean indexed = false;
+      if (oldMavenProject != null) {
+        indexed = remove(oldMavenProject.getProject());
+      }
+
+      if (newMavenProject != null
+          && (indexed || newMavenProject.getMavenProject() != null)) {
+        try {
+          index(newMavenProject, monitor);
+        } catch (CoreException | RuntimeException e) {
+          EOSGiEclipsePlugin.getDefault().getEOSGiLog().warning(
+              "Cannot index the dependencies of project: "
+                  + newMavenProject.getProject().getName(),
+              e);
+        }
+      }
+    }
+  }
+
+  private synchronized void put(final IProject project, final Set<GAV> dependencyGAVs) {
+    remove(project);
+    dependencyGAVsByProject.put(project, dependencyGAVs);
+    for (GAV gav : dependencyGAVs) {
+      dependentProjectsByGAV.computeIfAbsent(gav, (key) -> new HashSet<>()).add(project);
+    }
+  }
+
+  private synchronized boolean remove(final IProject project) {
+    Set<GAV> dependencyGAVs = dependencyGAVsByProject.remove(project);
+    if (dependencyGAVs == null) {
+      return false;
+    }
+
+    for (GAV gav : dependencyGAVs) {
+      Set<IProject> dependentProjects = dependentProjectsByGAV.get(gav);
+      if (dependentProjects != null) {
+        dependentProjects.remove(project);
+        if (dependentProjects.isEmpty()) {
+          dependentProjectsByGAV.remove(gav);
+        }
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.m2e.packaging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.aether.artifact.Artifact;
+
+/**
+ * Index of artifact files by groupId, artifactId, version, classifier and extension.
+ *
+ * <p>
+ * Lookups do not lock and do not allocate objects as they are called many times from parallel
+ * artifact resolution threads. The files are indexed by groupId, artifactId and version in nested
+ * maps, so no key has to be built for a lookup. The modifications are serialized with each other,
+ * but they never block the lookups.
+ */
+public class ArtifactFileIndex {
+
+  /**
+   * DTO.
+   */
+  private static class ArtifactFileEntry {
+
+    final String classifier;
+
+    final String extension;
+
+    final File file;
+
+    ArtifactFileEntry(final String classifier, final String extension, final File file) {
+      this.classifier = classifier;
+      this.extension = extension;
+      this.file = file;
+    }
+  }
+
+  private static void addArtifactFileEntry(final Artifact artifact,
+      final List<ArtifactFileEntry> artifactFileEntries) {
+
+    File artifactFile = artifact.getFile();
+
+    if (artifactFile == null) {
+      return;
+    }
+
+    String classifier = normalize(artifact.getClassifier());
+    String extension = normalize(artifact.getExtension());
+
+    // The last artifact wins if there are more with the same classifier and extension
+    artifactFileEntries.removeIf((entry) -> entry.classifier.equals(classifier)
+        && entry.extension.equals(extension));
+    artifactFileEntries.add(new ArtifactFileEntry(classifier, extension, artifactFile));
+  }
+
+  /**
+   * Normalizes the classifier or the extension of an artifact. The result is the same instance
+   * that is passed in the usual case where the value does not contain leading or trailing
+   * whitespaces.
+   */
+  private static String normalize(final String value) {
+    return (value != null) ? value.trim() : "";
+  }
+
+  /**
+   * Artifact files by groupId, artifactId and version. The arrays are never modified after they
+   * are put into the maps.
+   */
+  private final Map<String, Map<String, Map<String, ArtifactFileEntry[]>>> artifactFilesByGAV =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Finds an artifact file if exists.
+   *
+   * @param artifact
+   *          The maven artifact.
+   * @return The file of the maven artifact.
+   */
+  public File findArtifact(final Artifact artifact) {
+    Map<String, Map<String, ArtifactFileEntry[]>> artifactFilesByArtifactId =
+        artifactFilesByGAV.get(artifact.getGroupId());
+    if (artifactFilesByArtifactId == null) {
+      return null;
+    }
+
+    Map<String, ArtifactFileEntry[]> artifactFilesByVersion =
+        artifactFilesByArtifactId.get(artifact.getArtifactId());
+    if (artifactFilesByVersion == null) {
+      return null;
+    }
+
+    ArtifactFileEntry[] artifactFileEntries = artifactFilesByVersion.get(artifact.getBaseVersion());
+    if (artifactFileEntries == null) {
+      return null;
+    }
+
+    String classifier = normalize(artifact.getClassifier());
+    String extension = normalize(artifact.getExtension());
+    for (ArtifactFileEntry artifactFileEntry : artifactFileEntries) {
+      if (artifactFileEntry.classifier.equals(classifier)
+          && artifactFileEntry.extension.equals(extension)) {
+        return artifactFileEntry.file;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds the files of the artifacts of a maven project. The previously added files with the same
+   * coordinates are replaced.
+   *
+   * @param groupId
+   *          The groupId of the project.
+   * @param artifactId
+   *          The artifactId of the project.
+   * @param version
+   *          The version of the project.
+   * @param projectArtifacts
+   *          The artifacts of the project.
+   */
+  public synchronized void put(final String groupId, final String artifactId,
+      final String version, final ProjectArtifacts projectArtifacts) {
+
+    List<ArtifactFileEntry> artifactFileEntries = new ArrayList<>();
+
+    if (projectArtifacts.artifact != null) {
+      addArtifactFileEntry(projectArtifacts.artifact, artifactFileEntries);
+    }
+
+    for (Artifact artifact : projectArtifacts.attachedArtifacts) {
+      addArtifactFileEntry(artifact, artifactFileEntries);
+    }
+
+    artifactFilesByGAV
+        .computeIfAbsent(groupId, (key) -> new ConcurrentHashMap<>())
+        .computeIfAbsent(artifactId, (key) -> new ConcurrentHashMap<>())
+        .put(version,
+            artifactFileEntries.toArray(new ArtifactFileEntry[artifactFileEntries.size()]));
+  }
+
+  /**
+   * Removes the files of the artifacts of a maven project.
+   *
+   * @param groupId
+   *          The groupId of the project.
+   * @param artifactId
+   *          The artifactId of the project.
+   * @param version
+   *          The version of the project.
+   */
+  public synchronized void remove(final String groupId, final String artifactId,
+      final String version) {
+
+    Map<String, Map<String, ArtifactFileEntry[]>> artifactFilesByArtifactId =
+        artifactFilesByGAV.get(groupId);
+    if (artifactFilesByArtifactId == null) {
+      return;
+    }
+
+    Map<String, ArtifactFileEntry[]> artifactFilesByVersion =
+        artifactFilesByArtifactId.get(artifactId);
+    if (artifactFilesByVersion == null) {
+      return;
+    }
+
+    artifactFilesByVersion.remove(version);
+    if (artifactFilesByVersion.isEmpty()) {
+      artifactFilesByArtifactId.remove(artifactId);
+      if (artifactFilesByArtifactId.isEmpty()) {
+        artifactFilesByGAV.remove(groupId);
+      }
+    }
+  }
+
+}
@@ -15,9 +15,19 @@
  */
 package org.everit.osgi.dev.e4.plugin.m2e.packaging;
 
+import java.io.Closeable;
 import java.io.File;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -30,9 +40,14 @@ import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.everit.osgi.dev.e4.plugin.EOSGiEclipsePlugin;
 
 /**
  * Tracks changes in projects and fires change event if any of the projects should be re-packaged
@@ -43,20 +58,106 @@ import org.eclipse.m2e.core.project.IMavenProjectFacade;
  * <li>{@link MavenProject#getAttachedArtifacts()}</li>
  * </ul>
  * .
+ *
+ * <p>
+ * By default, the notification thread only collects the changed paths of the projects that have
+ * packaged artifacts and the paths are evaluated on a dedicated worker thread, so the workspace
+ * operations do not wait for the maven project lookups. The evaluation happens on the notification
+ * thread if the {@value #SYSPROP_SYNCHRONOUS_TRACKING} system property is <code>true</code>.
  */
-public class ChangedProjectTracker implements IResourceChangeListener {
+public class ChangedProjectTracker implements IResourceChangeListener, Closeable {
+
+  /**
+   * DTO.
+   */
+  private static class ProjectChange {
+
+    final Set<IPath> changedPaths = new HashSet<>();
+
+    final IProject eclipseProject;
+
+    /**
+     * The artifacts of the project at the time of the change.
+     */
+    final ProjectArtifacts projectArtifacts;
+
+    ProjectChange(final IProject eclipseProject, final ProjectArtifacts projectArtifacts) {
+      this.eclipseProject = eclipseProject;
+      this.projectArtifacts = projectArtifacts;
+    }
+  }
+
+  /**
+   * The workspace paths of the build directory and the artifact files of a project. The index is
+   * valid as long as the facade and the artifacts of the project are the same instances that the
+   * index was created from.
+   */
+  private static class ProjectPathIndex {
+
+    /**
+     * The workspace paths of the artifact files that are inside the project.
+     */
+    final Set<IPath> artifactPaths = new HashSet<>();
+
+    final IMavenProjectFacade mavenProjectFacade;
+
+    final ProjectArtifacts projectArtifacts;
+
+    /**
+     * The workspace path of the build directory or <code>null</code> if the build directory is not
+     * inside the project.
+     */
+    IPath targetPath;
+
+    ProjectPathIndex(final IMavenProjectFacade mavenProjectFacade,
+        final ProjectArtifacts projectArtifacts) {
+      this.mavenProjectFacade = mavenProjectFacade;
+      this.projectArtifacts = projectArtifacts;
+    }
+
+    boolean containsArtifactUnder(final IPath path) {
+      for (IPath artifactPath : artifactPaths) {
+        if (path.isPrefixOf(artifactPath)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    boolean isInTargetFolder(final IPath path) {
+      return targetPath != null && targetPath.isPrefixOf(path);
+    }
+  }
+
+  /**
+   * The period in milliseconds of checking the cancellation of the caller while it waits for the
+   * evaluation of the pending changes.
+   */
+  private static final long PENDING_CHANGES_CANCEL_CHECK_PERIOD = 100;
+
+  public static final String SYSPROP_SYNCHRONOUS_TRACKING = "eosgi.changeTracking.synchronous";
 
-  private static boolean isResourceArtifactFileOrSource(final IResourceDelta resourceDelta,
-      final Set<File> attachedFiles, final boolean inTargetFolder) {
+  private static void addArtifactPath(final ProjectPathIndex projectPathIndex,
+      final IProject eclipseProject, final Artifact artifact) {
 
-    if (!inTargetFolder) {
-      return true;
+    if (artifact == null || artifact.getFile() == null) {
+      return;
     }
-    IResource resource = resourceDelta.getResource();
-    File resourceFile = resource.getLocation().toFile();
+    IPath artifactPath = toWorkspacePath(eclipseProject, artifact.getFile());
+    if (artifactPath != null) {
+      projectPathIndex.artifactPaths.add(artifactPath);
+    }
+  }
 
-    return attachedFiles.contains(resourceFile);
+  private static void collectChangedPaths(final IResourceDelta[] deltaArray,
+      final Set<IPath> changedPaths) {
 
+    for (IResourceDelta delta : deltaArray) {
+      if (resourceDeltaMeansResourceChange(delta)) {
+        changedPaths.add(delta.getFullPath());
+      }
+      collectChangedPaths(delta.getAffectedChildren(), changedPaths);
+    }
   }
 
   /**
@@ -73,33 +174,177 @@ public class ChangedProjectTracker implements IResourceChangeListener {
         || (kind != 0 && (kind & IResourceDelta.CHANGED) == 0);
   }
 
+  private static IPath toWorkspacePath(final IProject eclipseProject, final File file) {
+    IPath projectLocation = eclipseProject.getLocation();
+    IPath fileLocation = Path.fromOSString(file.getAbsolutePath());
+    if (projectLocation == null || !projectLocation.isPrefixOf(fileLocation)) {
+      return null;
+    }
+    return eclipseProject.getFullPath().append(
+        fileLocation.removeFirstSegments(projectLocation.segmentCount()).setDevice(null));
+  }
+
+  /**
+   * The worker that evaluates the collected changes or <code>null</code> if the changes are
+   * evaluated on the notification thread.
+   */
+  private final ExecutorService changeEvaluator;
+
   private final Function<IProject, ProjectArtifacts> projectArtifactsProvider;
 
   private final Consumer<IProject> projectChangeHandler;
 
+  private final Map<IProject, ProjectPathIndex> projectPathIndexes = new ConcurrentHashMap<>();
+
   public ChangedProjectTracker(final Consumer<IProject> projectChangeHandler,
       final Function<IProject, ProjectArtifacts> projectArtifactsProvider) {
+    this(projectChangeHandler, projectArtifactsProvider,
+        !Boolean.getBoolean(SYSPROP_SYNCHRONOUS_TRACKING));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param projectChangeHandler
+   *          Called when a project should be re-packaged.
+   * @param projectArtifactsProvider
+   *          Provides the packaged artifacts of a project or <code>null</code> if the project is
+   *          not packaged.
+   * @param asynchronous
+   *          Whether the changes should be evaluated on a worker thread.
+   */
+  public ChangedProjectTracker(final Consumer<IProject> projectChangeHandler,
+      final Function<IProject, ProjectArtifacts> projectArtifactsProvider,
+      final boolean asynchronous) {
     this.projectChangeHandler = projectChangeHandler;
     this.projectArtifactsProvider = projectArtifactsProvider;
+
+    if (asynchronous) {
+      this.changeEvaluator = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "EOSGi changed project tracker");
+        thread.setDaemon(true);
+        return thread;
+      });
+    } else {
+      this.changeEvaluator = null;
+    }
   }
 
-  private boolean processChangeEventOnMavenProject(final IResourceDelta delta,
-      final IMavenProjectFacade mavenProjectFacade) {
+  /**
+   * Waits until the changes that were reported before the call are evaluated. The caller must not
+   * continue earlier, as the artifacts of the changed projects would be reused.
+   *
+   * @param monitor
+   *          The monitor of the caller that is checked for cancellation while waiting.
+   * @throws OperationCanceledException
+   *           if the monitor is canceled or the thread is interrupted while waiting.
+   */
+  public void awaitPendingChanges(final IProgressMonitor monitor) {
+    if (changeEvaluator == null) {
+      return;
+    }
+
+    Future<?> evaluation;
     try {
-      String targetDirectory = mavenProjectFacade.getMavenProject(new NullProgressMonitor())
-          .getBuild().getDirectory();
-      File targetDirectoryFile = new File(targetDirectory);
+      evaluation = changeEvaluator.submit(() -> {
+      });
+    } catch (RejectedExecutionException e) {
+      // The tracker is closed
+      return;
+    }
+
+    boolean evaluated = false;
+    while (!evaluated) {
+      try {
+        evaluation.get(PENDING_CHANGES_CANCEL_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+        evaluated = true;
+      } catch (TimeoutException e) {
+        if (monitor.isCanceled()) {
+          throw new OperationCanceledException();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new OperationCanceledException();
+      } catch (ExecutionException e) {
+        // The evaluation tasks handle their own errors, so the empty task cannot fail
+        evaluated = true;
+      }
+    }
+  }
 
-      ProjectArtifacts projectArtifacts =
-          projectArtifactsProvider.apply(mavenProjectFacade.getProject());
+  /**
+   * Stops the worker thread of the tracker. Changes that are not evaluated yet are dropped.
+   */
+  @Override
+  public void close() {
+    if (changeEvaluator != null) {
+      changeEvaluator.shutdownNow();
+    }
+  }
+
+  private ProjectPathIndex createProjectPathIndex(final IMavenProjectFacade mavenProjectFacade,
+      final ProjectArtifacts projectArtifacts) {
 
-      Set<File> artifactFileSet = toArtifactFileSet(projectArtifacts);
+    IProject eclipseProject = mavenProjectFacade.getProject();
+    ProjectPathIndex projectPathIndex =
+        new ProjectPathIndex(mavenProjectFacade, projectArtifacts);
 
-      return processMavenProjectChangeDeltaRecurce(delta.getAffectedChildren(), targetDirectoryFile,
-          artifactFileSet, false);
+    try {
+      String targetDirectory = mavenProjectFacade.getMavenProject(new NullProgressMonitor())
+          .getBuild().getDirectory();
+      projectPathIndex.targetPath = toWorkspacePath(eclipseProject, new File(targetDirectory));
     } catch (CoreException e) {
       throw new RuntimeException(e);
     }
+
+    // Happens if no file is generated from packaging (e.g.: pom) but a plugin generates an
+    // attached artifact
+    addArtifactPath(projectPathIndex, eclipseProject, projectArtifacts.artifact);
+
+    for (Artifact artifact : projectArtifacts.attachedArtifacts) {
+      addArtifactPath(projectPathIndex, eclipseProject, artifact);
+    }
+    return projectPathIndex;
+  }
+
+  private ProjectPathIndex getProjectPathIndex(final IMavenProjectFacade mavenProjectFacade,
+      final ProjectArtifacts projectArtifacts) {
+
+    IProject eclipseProject = mavenProjectFacade.getProject();
+    ProjectPathIndex projectPathIndex = projectPathIndexes.get(eclipseProject);
+    if (projectPathIndex == null || projectPathIndex.mavenProjectFacade != mavenProjectFacade
+        || projectPathIndex.projectArtifacts != projectArtifacts) {
+
+      projectPathIndex = createProjectPathIndex(mavenProjectFacade, projectArtifacts);
+      projectPathIndexes.put(eclipseProject, projectPathIndex);
+    }
+    return projectPathIndex;
+  }
+
+  private boolean hasRelevantChange(final IResourceDelta[] deltaArray,
+      final ProjectPathIndex projectPathIndex) {
+
+    for (IResourceDelta delta : deltaArray) {
+      IPath fullPath = delta.getFullPath();
+
+      if (projectPathIndex.isInTargetFolder(fullPath)) {
+        if (projectPathIndex.artifactPaths.contains(fullPath)
+            && resourceDeltaMeansResourceChange(delta)) {
+          return true;
+        }
+
+        // Only the artifact files count in the target folder, so folders without artifact files
+        // are not visited
+        if (projectPathIndex.containsArtifactUnder(fullPath)
+            && hasRelevantChange(delta.getAffectedChildren(), projectPathIndex)) {
+          return true;
+        }
+      } else if (resourceDeltaMeansResourceChange(delta)
+          || hasRelevantChange(delta.getAffectedChildren(), projectPathIndex)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   private void processChangeEventRecurse(final IResourceDelta delta) {
@@ -107,18 +352,32 @@ public class ChangedProjectTracker implements IResourceChangeListener {
     if (resource instanceof IProject) {
       IProject eclipseProject = (IProject) resource;
 
-      if (!projectArtifactsEvaluated(eclipseProject)) {
+      ProjectArtifacts projectArtifacts = projectArtifactsProvider.apply(eclipseProject);
+      if (projectArtifacts == null) {
+        projectPathIndexes.remove(eclipseProject);
         return;
       }
 
-      if (eclipseProject.isOpen()) {
-        IMavenProjectFacade mavenProjectFacade =
-            MavenPlugin.getMavenProjectRegistry().getProject(eclipseProject);
+      if (!eclipseProject.isOpen()) {
+        return;
+      }
 
-        if (mavenProjectFacade != null
-            && processChangeEventOnMavenProject(delta, mavenProjectFacade)) {
-          projectChangeHandler.accept(eclipseProject);
+      if (changeEvaluator != null) {
+        ProjectChange projectChange = new ProjectChange(eclipseProject, projectArtifacts);
+        collectChangedPaths(delta.getAffectedChildren(), projectChange.changedPaths);
+        if (!projectChange.changedPaths.isEmpty()) {
+          changeEvaluator.execute(() -> processProjectChange(projectChange));
         }
+        return;
+      }
+
+      IMavenProjectFacade mavenProjectFacade =
+          MavenPlugin.getMavenProjectRegistry().getProject(eclipseProject);
+
+      if (mavenProjectFacade != null
+          && hasRelevantChange(delta.getAffectedChildren(),
+              getProjectPathIndex(mavenProjectFacade, projectArtifacts))) {
+        projectChangeHandler.accept(eclipseProject);
       }
     } else {
       IResourceDelta[] affectedChildren = delta.getAffectedChildren();
@@ -130,25 +389,36 @@ public class ChangedProjectTracker implements IResourceChangeListener {
     }
   }
 
-  private boolean processMavenProjectChangeDeltaRecurce(final IResourceDelta[] deltaArray,
-      final File targetDirectoryFile, final Set<File> artifactFiles,
-      final boolean pInTargetFolder) {
-
-    for (IResourceDelta delta : deltaArray) {
-      boolean inTargetFolder =
-          pInTargetFolder || targetDirectoryFile.equals(delta.getResource().getLocation().toFile());
+  private void processProjectChange(final ProjectChange projectChange) {
+    IProject eclipseProject = projectChange.eclipseProject;
+    try {
+      if (!eclipseProject.isOpen()) {
+        return;
+      }
 
-      if (resourceDeltaMeansResourceChange(delta)
-          && isResourceArtifactFileOrSource(delta, artifactFiles, inTargetFolder)) {
-        return true;
+      IMavenProjectFacade mavenProjectFacade =
+          MavenPlugin.getMavenProjectRegistry().getProject(eclipseProject);
+      if (mavenProjectFacade == null) {
+        return;
       }
 
-      if (processMavenProjectChangeDeltaRecurce(delta.getAffectedChildren(), targetDirectoryFile,
-          artifactFiles, inTargetFolder)) {
-        return true;
+      ProjectPathIndex projectPathIndex =
+          getProjectPathIndex(mavenProjectFacade, projectChange.projectArtifacts);
+
+      for (IPath changedPath : projectChange.changedPaths) {
+        if (!projectPathIndex.isInTargetFolder(changedPath)
+            || projectPathIndex.artifactPaths.contains(changedPath)) {
+          projectChangeHandler.accept(eclipseProject);
+          return;
+        }
+      }
+    } catch (RuntimeException e) {
+      EOSGiEclipsePlugin eosgiEclipsePlugin = EOSGiEclipsePlugin.getDefault();
+      if (eosgiEclipsePlugin != null) {
+        eosgiEclipsePlugin.getEOSGiLog().error(
+            "Error during evaluating the changes of project: " + eclipseProject.getName(), e);
       }
     }
-    return false;
   }
 
   private boolean projectArtifactsEvaluated(final IProject resource) {
@@ -156,15 +426,18 @@ public class ChangedProjectTracker implements IResourceChangeListener {
   }
 
   @Override
-  public synchronized void resourceChanged(final IResourceChangeEvent event) {
+  public void resourceChanged(final IResourceChangeEvent event) {
     int eventType = event.getType();
 
     switch (eventType) {
       case IResourceChangeEvent.PRE_DELETE:
       case IResourceChangeEvent.PRE_CLOSE:
         IResource resource = event.getResource();
-        if (resource instanceof IProject && projectArtifactsEvaluated((IProject) resource)) {
-          projectChangeHandler.accept((IProject) resource);
+        if (resource instanceof IProject) {
+          projectPathIndexes.remove(resource);
+          if (projectArtifactsEvaluated((IProject) resource)) {
+            projectChangeHandler.accept((IProject) resource);
+          }
         }
         break;
       case IResourceChangeEvent.POST_CHANGE:
@@ -175,18 +448,4 @@ public class ChangedProjectTracker implements IResourceChangeListener {
     }
   }
 
-  private Set<File> toArtifactFileSet(final ProjectArtifacts projectArtifacts) {
-    Set<File> result = new HashSet<>();
-    if (projectArtifacts.artifact != null) {
-      // Happens if no file is generated from packaging (e.g.: pom) but a plugin generates an
-      // attached artifact
-      result.add(projectArtifacts.artifact.getFile());
-    }
-
-    for (Artifact artifact : projectArtifacts.attachedArtifacts) {
-      result.add(artifact.getFile());
-    }
-    return result;
-  }
-
 }
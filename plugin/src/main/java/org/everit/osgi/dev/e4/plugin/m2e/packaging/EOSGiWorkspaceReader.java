@@ -25,7 +25,6 @@ import org.eclipse.aether.repository.WorkspaceReader;
 import org.eclipse.aether.repository.WorkspaceRepository;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.everit.osgi.dev.e4.plugin.GAV;
 
@@ -38,10 +37,14 @@ public class EOSGiWorkspaceReader implements WorkspaceReader {
 
   private final Set<GAV> currentlyBuildingDependencies = new LinkedHashSet<>();
 
+  private final NonWorkspaceArtifactCache nonWorkspaceArtifactCache;
+
   private final PackagedArtifactContainer packagedArtifactContainer;
 
   private final ProjectPackager projectPackager;
 
+  private final PackagingSession session;
+
   private final WorkspaceReader wrapped;
 
   /**
@@ -54,14 +57,21 @@ public class EOSGiWorkspaceReader implements WorkspaceReader {
    *          The container that holds the packaged artifacts.
    * @param projectPackager
    *          Util class that packages the projects.
+   * @param session
+   *          The packaging session of the operation that runs the maven execution.
+   * @param nonWorkspaceArtifactCache
+   *          The cache that tells quickly if an artifact is not a project in the workspace.
    */
   public EOSGiWorkspaceReader(final WorkspaceReader wrapped,
       final PackagedArtifactContainer packagedArtifactContainer,
-      final ProjectPackager projectPackager) {
+      final ProjectPackager projectPackager, final PackagingSession session,
+      final NonWorkspaceArtifactCache nonWorkspaceArtifactCache) {
 
     this.wrapped = wrapped;
     this.packagedArtifactContainer = packagedArtifactContainer;
     this.projectPackager = projectPackager;
+    this.session = session;
+    this.nonWorkspaceArtifactCache = nonWorkspaceArtifactCache;
   }
 
   @Override
@@ -71,13 +81,16 @@ public class EOSGiWorkspaceReader implements WorkspaceReader {
       return result;
     }
 
-    // If the project is on the workspace, try packaging it
+    IMavenProjectFacade mavenProject = nonWorkspaceArtifactCache.getMavenProject(
+        artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion());
 
-    GAV gav = new GAV(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion());
+    if (mavenProject == null) {
+      return wrapped.findArtifact(artifact);
+    }
+
+    // The project is on the workspace, try packaging it
 
-    IMavenProjectFacade mavenProject =
-        MavenPlugin.getMavenProjectRegistry().getMavenProject(gav.groupId, gav.artifactId,
-            gav.version);
+    GAV gav = new GAV(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion());
 
     try {
       if (!currentlyBuildingDependencies.add(gav)) {
@@ -86,13 +99,13 @@ public class EOSGiWorkspaceReader implements WorkspaceReader {
             + currentlyBuildingDependencies.toString());
       }
 
-      if (mavenProject == null || projectPackager.isProjectPackagedAndUpToDate(mavenProject,
+      if (projectPackager.isProjectPackagedAndUpToDate(mavenProject, session,
           new NullProgressMonitor())) {
 
         return wrapped.findArtifact(artifact);
       }
 
-      projectPackager.packageProject(mavenProject, new NullProgressMonitor());
+      projectPackager.packageProject(mavenProject, session, new NullProgressMonitor());
 
       result = packagedArtifactContainer.findArtifact(artifact);
       if (result != null) {
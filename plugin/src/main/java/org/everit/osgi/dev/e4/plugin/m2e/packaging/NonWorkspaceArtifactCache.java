@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.m2e.packaging;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.m2e.core.MavenPlugin;
+import org.eclipse.m2e.core.project.IMavenProjectChangedListener;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.eclipse.m2e.core.project.MavenProjectChangedEvent;
+
+/**
+ * Remembers the artifacts that are not maven projects in the workspace, so the m2e project registry
+ * is not queried again and again for third-party artifacts during artifact resolution. The cache
+ * is dropped whenever m2e reports a change of any workspace maven project, as the change might
+ * add, remove or rename a project.
+ */
+public class NonWorkspaceArtifactCache implements IMavenProjectChangedListener {
+
+  /**
+   * The versions of artifacts by groupId and artifactId that are not projects in the workspace.
+   * The whole map is replaced on invalidation, so a lookup that started before the invalidation
+   * cannot put a stale entry into the new map.
+   */
+  private volatile Map<String, Map<String, Set<String>>> nonWorkspaceVersionsByGA =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Finds the maven project in the workspace with the specified coordinates.
+   *
+   * @param groupId
+   *          The groupId of the artifact.
+   * @param artifactId
+   *          The artifactId of the artifact.
+   * @param version
+   *          The base version of the artifact.
+   * @return The maven project or <code>null</code> if the artifact is not a project in the
+   *         workspace.
+   */
+  public IMavenProjectFacade getMavenProject(final String groupId, final String artifactId,
+      final String version) {
+
+    Map<String, Map<String, Set<String>>> nonWorkspaceVersions = nonWorkspaceVersionsByGA;
+
+    Map<String, Set<String>> nonWorkspaceVersionsByArtifactId = nonWorkspaceVersions.get(groupId);
+    if (nonWorkspaceVersionsByArtifactId != null) {
+      Set<String> versions = nonWorkspaceVersionsByArtifactId.get(artifactId);
+      if (versions != null && versions.contains(version)) {
+        return null;
+      }
+    }
+
+    IMavenProjectFacade mavenProject =
+        MavenPlugin.getMavenProjectRegistry().getMavenProject(groupId, artifactId, version);
+
+    if (mavenProject == null) {
+      nonWorkspaceVersions.computeIfAbsent(groupId, (key) -> new ConcurrentHashMap<>())
+          .computeIfAbsent(artifactId, (key) -> ConcurrentHashMap.newKeySet()).add(version);
+    }
+    return mavenProject;
+  }
+
+  /**
+   * Drops all cached information.
+   */
+  public void invalidate() {
+    nonWorkspaceVersionsByGA = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public void mavenProjectChanged(final MavenProjectChangedEvent[] events,
+      final IProgressMonitor monitor) {
+
+    if (events.length > 0) {
+      invalidate();
+    }
+  }
+
+}
@@ -16,13 +16,8 @@
 package org.everit.osgi.dev.e4.plugin.m2e.packaging;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
-import javax.annotation.Generated;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.core.resources.IProject;
@@ -31,88 +26,32 @@ import org.eclipse.m2e.core.project.IMavenProjectFacade;
 
 /**
  * Helper class to track project artifacts that are on the workspace and compiled by this plugin.
+ *
+ * <p>
+ * The artifact files are stored in and looked up from an {@link ArtifactFileIndex}.
  */
 public class PackagedArtifactContainer {
 
   /**
    * DTO.
    */
-  private static class ClassifierAndExtension {
+  private static class ProjectEntry {
 
-    String classifier;
+    String artifactId;
 
-    String extension;
+    String groupId;
 
-    ClassifierAndExtension(final String classifier, final String extension) {
-      this.classifier = ((classifier != null) ? classifier : "").trim();
-      this.extension = ((extension != null) ? extension : "").trim();
-    }
+    ProjectArtifacts projectArtifacts;
 
-    @Override
-    @Generated("eclipse")
-    public boolean equals(final Object obj) {
-      if (this == obj) {
-        return true;
-      }
-      if (obj == null) {
-        return false;
-      }
-      if (getClass() != obj.getClass()) {
-        return false;
-      }
-      ClassifierAndExtension other = (ClassifierAndExtension) obj;
-      if (classifier == null) {
-        if (other.classifier != null) {
-          return false;
-        }
-      } else if (!classifier.equals(other.classifier)) {
-        return false;
-      }
-      if (extension == null) {
-        if (other.extension != null) {
-          return false;
-        }
-      } else if (!extension.equals(other.extension)) {
-        return false;
-      }
-      return true;
-    }
-
-    @Override
-    @Generated("eclipse")
-    public int hashCode() {
-      final int prime = 31;
-      int result = 1;
-      result = prime * result + ((classifier == null) ? 0 : classifier.hashCode());
-      result = prime * result + ((extension == null) ? 0 : extension.hashCode());
-      return result;
-    }
-  }
-
-  /**
-   * Creates a unique key for an artifact.
-   *
-   * @param groupId
-   *          The group id of the maven artifact.
-   * @param artifactId
-   *          The artifact id of the maven artifact.
-   * @param version
-   *          The version of the maven artifact.
-   * @return A unique key of the maven artifact.
-   */
-  private static String createArtifactKey(final String groupId, final String artifactId,
-      final String version) {
-    return groupId + ':' + artifactId + ':' + version;
+    String version;
   }
 
-  private final Map<IProject, String> artifactKeyByEclipseProject = new HashMap<>();
-
-  private final Map<String, Map<ClassifierAndExtension, File>> gavAndFileByClassifierAndExtMap =
-      new HashMap<>();
+  private final ArtifactFileIndex artifactFileIndex = new ArtifactFileIndex();
 
-  private final Map<IProject, ProjectArtifacts> projectArtifactsByEclipseProject = new HashMap<>();
+  private final Map<IProject, ProjectEntry> projectEntryByEclipseProject =
+      new ConcurrentHashMap<>();
 
-  private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+  private final Object writeLock = new Object();
 
   /**
    * Finds an artifact file if exists.
@@ -122,26 +61,7 @@ public class PackagedArtifactContainer {
    * @return The file of the maven artifact.
    */
   public File findArtifact(final Artifact artifact) {
-    Lock readLock = readWriteLock.readLock();
-    readLock.lock();
-    try {
-      Map<ClassifierAndExtension, File> fileByClassifierAndExtensionMap =
-          gavAndFileByClassifierAndExtMap.get(createArtifactKey(artifact.getGroupId(),
-              artifact.getArtifactId(), artifact.getBaseVersion()));
-
-      if (fileByClassifierAndExtensionMap != null) {
-        ClassifierAndExtension classifierAndExtension =
-            new ClassifierAndExtension(artifact.getClassifier(), artifact.getExtension());
-
-        File file = fileByClassifierAndExtensionMap.get(classifierAndExtension);
-        if (file != null) {
-          return file;
-        }
-      }
-      return null;
-    } finally {
-      readLock.unlock();
-    }
+    return artifactFileIndex.findArtifact(artifact);
   }
 
   /**
@@ -152,30 +72,15 @@ public class PackagedArtifactContainer {
    * @return The artifacts that are created with maven after running mvn package.
    */
   public ProjectArtifacts getProjectArtifacts(final IProject eclipseProject) {
-    Lock readLock = readWriteLock.readLock();
-    readLock.lock();
-    try {
-      return projectArtifactsByEclipseProject.get(eclipseProject);
-    } finally {
-      readLock.unlock();
-    }
+    ProjectEntry projectEntry = projectEntryByEclipseProject.get(eclipseProject);
+    return (projectEntry != null) ? projectEntry.projectArtifacts : null;
   }
 
-  private void putArtifact(final Artifact artifact,
-      final Map<ClassifierAndExtension, File> fileByClassifierAndExtensionMap) {
-
-    File artifactFile = artifact.getFile();
-
-    if (artifactFile == null) {
-      return;
-    }
-
-    String classifier = artifact.getClassifier();
-    String extension = artifact.getExtension();
-
-    ClassifierAndExtension classifierAndExtension =
-        new ClassifierAndExtension(classifier, extension);
-    fileByClassifierAndExtensionMap.put(classifierAndExtension, artifactFile);
+  private boolean hasSameCoordinates(final ProjectEntry projectEntry,
+      final ProjectEntry otherProjectEntry) {
+    return projectEntry.groupId.equals(otherProjectEntry.groupId)
+        && projectEntry.artifactId.equals(otherProjectEntry.artifactId)
+        && projectEntry.version.equals(otherProjectEntry.version);
   }
 
   /**
@@ -189,32 +94,26 @@ public class PackagedArtifactContainer {
   public void putArtifactsOfMavenProject(final IMavenProjectFacade mavenProjectFacade,
       final ProjectArtifacts projectArtifacts) {
 
-    Lock writeLock = readWriteLock.writeLock();
-    writeLock.lock();
-    try {
-      ArtifactKey artifactKeyObj = mavenProjectFacade.getArtifactKey();
+    ArtifactKey artifactKey = mavenProjectFacade.getArtifactKey();
 
-      String artifactKey =
-          createArtifactKey(artifactKeyObj.getGroupId(), artifactKeyObj.getArtifactId(),
-              artifactKeyObj.getVersion());
+    ProjectEntry projectEntry = new ProjectEntry();
+    projectEntry.groupId = artifactKey.getGroupId();
+    projectEntry.artifactId = artifactKey.getArtifactId();
+    projectEntry.version = artifactKey.getVersion();
+    projectEntry.projectArtifacts = projectArtifacts;
 
-      IProject eclipseProject = mavenProjectFacade.getProject();
+    synchronized (writeLock) {
+      // The files of the same coordinates are replaced in one step, so parallel lookups never
+      // miss the artifact of a project that is packaged again
+      artifactFileIndex.put(projectEntry.groupId, projectEntry.artifactId, projectEntry.version,
+          projectArtifacts);
 
-      artifactKeyByEclipseProject.put(eclipseProject, artifactKey);
+      ProjectEntry previousEntry =
+          projectEntryByEclipseProject.put(mavenProjectFacade.getProject(), projectEntry);
 
-      Map<ClassifierAndExtension, File> fileByClassifierAndExtensionMap = new HashMap<>();
-
-      if (projectArtifacts.artifact != null) {
-        putArtifact(projectArtifacts.artifact, fileByClassifierAndExtensionMap);
+      if (previousEntry != null && !hasSameCoordinates(previousEntry, projectEntry)) {
+        removeArtifactFileEntries(previousEntry);
       }
-
-      for (Artifact artifact : projectArtifacts.attachedArtifacts) {
-        putArtifact(artifact, fileByClassifierAndExtensionMap);
-      }
-      gavAndFileByClassifierAndExtMap.put(artifactKey, fileByClassifierAndExtensionMap);
-      projectArtifactsByEclipseProject.put(eclipseProject, projectArtifacts);
-    } finally {
-      writeLock.unlock();
     }
   }
 
@@ -225,17 +124,16 @@ public class PackagedArtifactContainer {
    *          The eclipse project that the artifact files belonged to.
    */
   public void removeArtifactFiles(final IProject eclipseProject) {
-    Lock writeLock = readWriteLock.writeLock();
-    writeLock.lock();
-    try {
-      String artifactKey = artifactKeyByEclipseProject.remove(eclipseProject);
-      if (artifactKey != null) {
-        gavAndFileByClassifierAndExtMap.remove(artifactKey);
+    synchronized (writeLock) {
+      ProjectEntry projectEntry = projectEntryByEclipseProject.remove(eclipseProject);
+      if (projectEntry != null) {
+        removeArtifactFileEntries(projectEntry);
       }
-      projectArtifactsByEclipseProject.remove(eclipseProject);
-    } finally {
-      writeLock.unlock();
     }
   }
 
+  private void removeArtifactFileEntries(final ProjectEntry projectEntry) {
+    artifactFileIndex.remove(projectEntry.groupId, projectEntry.artifactId, projectEntry.version);
+  }
+
 }
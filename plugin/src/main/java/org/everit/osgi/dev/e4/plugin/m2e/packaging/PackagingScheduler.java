@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.m2e.packaging;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.m2e.core.embedder.ArtifactKey;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.everit.osgi.dev.e4.plugin.EOSGiEclipsePlugin;
+import org.everit.osgi.dev.e4.plugin.util.ResourceRefresher;
+
+/**
+ * Packages multiple workspace projects parallel. A project is packaged only after all of its
+ * prerequisites are packaged, so independent projects are packaged at the same time while the
+ * topological order of the dependency graph is still respected.
+ *
+ * <p>
+ * The prerequisites come from the dependency tree where a shared dependency appears under one
+ * parent only, so a maven execution may need a project that is still packaged by an other worker.
+ * In that case the workspace reader of the execution waits for that packaging via the
+ * {@link PackagingSession}.
+ *
+ * <p>
+ * The caller typically holds the workspace lock, therefore building and refreshing the eclipse
+ * projects happen on the calling thread and only the maven executions run on the worker threads.
+ */
+public class PackagingScheduler {
+
+  private final int maxThreadCount;
+
+  private final ProjectPackager projectPackager;
+
+  /**
+   * Constructor that sizes the worker pool to the available processors of the machine.
+   *
+   * @param projectPackager
+   *          The packager that packages the projects.
+   */
+  public PackagingScheduler(final ProjectPackager projectPackager) {
+    this(projectPackager, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param projectPackager
+   *          The packager that packages the projects.
+   * @param maxThreadCount
+   *          The maximum number of projects that are packaged at the same time.
+   */
+  public PackagingScheduler(final ProjectPackager projectPackager, final int maxThreadCount) {
+    this.projectPackager = projectPackager;
+    this.maxThreadCount = Math.max(1, maxThreadCount);
+  }
+
+  private void buildProjects(final Collection<IMavenProjectFacade> mavenProjectFacades)
+      throws CoreException {
+
+    for (IMavenProjectFacade mavenProjectFacade : mavenProjectFacades) {
+      mavenProjectFacade.getProject().build(IncrementalProjectBuilder.INCREMENTAL_BUILD,
+          new NullProgressMonitor());
+    }
+  }
+
+  private Map<IMavenProjectFacade, Set<IMavenProjectFacade>> createPendingPrerequisites(
+      final Map<IMavenProjectFacade, ? extends Collection<IMavenProjectFacade>> prerequisites) {
+
+    Map<IMavenProjectFacade, Set<IMavenProjectFacade>> result = new LinkedHashMap<>();
+    for (Entry<IMavenProjectFacade, ? extends Collection<IMavenProjectFacade>> entry : prerequisites
+        .entrySet()) {
+
+      Set<IMavenProjectFacade> pendingPrerequisites = new HashSet<>(entry.getValue());
+      // Prerequisites that are not packaged by this scheduler are up to date
+      pendingPrerequisites.retainAll(prerequisites.keySet());
+      pendingPrerequisites.remove(entry.getKey());
+      result.put(entry.getKey(), pendingPrerequisites);
+    }
+    return result;
+  }
+
+  /**
+   * Packages the passed projects.
+   *
+   * @param prerequisites
+   *          The projects that should be packaged with the projects that must be packaged before
+   *          them. Prerequisites that are not keys of the map are ignored.
+   * @param session
+   *          The packaging session of the operation.
+   * @param monitor
+   *          The monitor to show progress. One tick is consumed for each packaged project.
+   * @throws CoreException
+   *           if the packaging of any of the projects fails.
+   */
+  public void packageProjects(
+      final Map<IMavenProjectFacade, ? extends Collection<IMavenProjectFacade>> prerequisites,
+      final PackagingSession session, final SubMonitor monitor) throws CoreException {
+
+    if (prerequisites.isEmpty()) {
+      return;
+    }
+
+    buildProjects(prerequisites.keySet());
+
+    ResourceRefresher resourceRefresher = new ResourceRefresher();
+    try {
+      packageProjectsParallel(prerequisites, session, resourceRefresher, monitor);
+    } finally {
+      resourceRefresher.refresh(new NullProgressMonitor());
+    }
+  }
+
+  private void packageProjectsParallel(
+      final Map<IMavenProjectFacade, ? extends Collection<IMavenProjectFacade>> prerequisites,
+      final PackagingSession session, final ResourceRefresher resourceRefresher,
+      final SubMonitor monitor) throws CoreException {
+
+    Map<IMavenProjectFacade, Set<IMavenProjectFacade>> pendingPrerequisites =
+        createPendingPrerequisites(prerequisites);
+
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(Math.min(maxThreadCount, pendingPrerequisites.size()));
+
+    CompletionService<IMavenProjectFacade> completionService =
+        new ExecutorCompletionService<>(executorService);
+
+    Throwable failure = null;
+    int runningCount = 0;
+    try {
+      while (!pendingPrerequisites.isEmpty() || runningCount > 0) {
+        if (failure == null && !monitor.isCanceled()) {
+          runningCount += submitReadyProjects(pendingPrerequisites, session, resourceRefresher,
+              completionService, monitor);
+        }
+
+        if (runningCount == 0) {
+          break;
+        }
+
+        Future<IMavenProjectFacade> future = completionService.take();
+        runningCount--;
+        try {
+          IMavenProjectFacade packagedProject = future.get();
+          monitor.worked(1);
+          for (Set<IMavenProjectFacade> projectPrerequisites : pendingPrerequisites.values()) {
+            projectPrerequisites.remove(packagedProject);
+          }
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OperationCanceledException();
+    } finally {
+      executorService.shutdown();
+    }
+
+    throwIfFailed(failure);
+
+    if (monitor.isCanceled()) {
+      throw new OperationCanceledException();
+    }
+
+    if (!pendingPrerequisites.isEmpty()) {
+      throw new IllegalStateException(
+          "Cyclic dependency between projects: " + pendingPrerequisites.keySet());
+    }
+  }
+
+  private int submitReadyProjects(
+      final Map<IMavenProjectFacade, Set<IMavenProjectFacade>> pendingPrerequisites,
+      final PackagingSession session, final ResourceRefresher resourceRefresher,
+      final CompletionService<IMavenProjectFacade> completionService, final SubMonitor monitor) {
+
+    int submittedCount = 0;
+    for (Iterator<Entry<IMavenProjectFacade, Set<IMavenProjectFacade>>> iterator =
+        pendingPrerequisites.entrySet().iterator(); iterator.hasNext();) {
+
+      Entry<IMavenProjectFacade, Set<IMavenProjectFacade>> entry = iterator.next();
+      if (entry.getValue().isEmpty()) {
+        iterator.remove();
+        IMavenProjectFacade mavenProjectFacade = entry.getKey();
+
+        ArtifactKey artifactKey = mavenProjectFacade.getArtifactKey();
+        monitor.setTaskName("Packaging dependency: " + artifactKey.getGroupId() + ":"
+            + artifactKey.getArtifactId() + ":" + artifactKey.getVersion());
+
+        completionService.submit(() -> {
+          projectPackager.packageProjectDeferringRefresh(mavenProjectFacade, session,
+              resourceRefresher, new NullProgressMonitor());
+          return mavenProjectFacade;
+        });
+        submittedCount++;
+      }
+    }
+    return submittedCount;
+  }
+
+  private void throwIfFailed(final Throwable failure) throws CoreException {
+    if (failure == null) {
+      return;
+    }
+    if (failure instanceof CoreException) {
+      throw (CoreException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new CoreException(new Status(IStatus.ERROR, EOSGiEclipsePlugin.PLUGIN_ID,
+        "Error during packaging dependencies", failure));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.m2e.packaging;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IProject;
+import org.everit.osgi.dev.e4.plugin.m2e.MavenExecutionContextPool;
+
+/**
+ * Memoizes the up-to-date checks of the projects during one dist or launch, so the packaging
+ * result file and the source files of a project are checked at most once, even if the same
+ * project is asked about by the dependency analysis and later by the workspace reader during the
+ * maven execution. Up to date projects do not have to be memoized here as their artifacts are
+ * stored in the {@link PackagedArtifactContainer}.
+ *
+ * <p>
+ * A session is opened by {@link ProjectPackager} and it belongs to the operation that opened it.
+ * The session is passed explicitly to the packaging calls of the operation, so operations that run
+ * at the same time do not see the verdicts of each other. The maven executions of the packaging
+ * calls borrow their contexts from the pool of the session if the operation opened the session with
+ * a pool.
+ *
+ * <p>
+ * The session also tracks the packagings of the operation, so a project that is needed by the
+ * maven execution of an other project is not packaged by two threads at the same time. The
+ * thread that asks for a project that is being packaged waits for that packaging.
+ */
+public final class PackagingSession implements Closeable {
+
+  /**
+   * DTO.
+   */
+  static final class Packaging {
+
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    final Thread thread = Thread.currentThread();
+  }
+
+  /**
+   * The pool of the operation that reuses the maven execution contexts or <code>null</code>.
+   */
+  final MavenExecutionContextPool contextPool;
+
+  private final Set<IProject> notUpToDateProjects = ConcurrentHashMap.newKeySet();
+
+  private final Map<IProject, Packaging> packagingsByProject = new ConcurrentHashMap<>();
+
+  PackagingSession(final MavenExecutionContextPool contextPool) {
+    this.contextPool = contextPool;
+  }
+
+  /**
+   * Closes the session. The verdicts of the session are dropped.
+   */
+  @Override
+  public void close() {
+    notUpToDateProjects.clear();
+    packagingsByProject.clear();
+  }
+
+  boolean isKnownAsNotUpToDate(final IProject eclipseProject) {
+    return notUpToDateProjects.contains(eclipseProject);
+  }
+
+  void markNotUpToDate(final IProject eclipseProject) {
+    notUpToDateProjects.add(eclipseProject);
+  }
+
+  void markPackaged(final IProject eclipseProject) {
+    notUpToDateProjects.remove(eclipseProject);
+  }
+
+  void packagingFailed(final IProject eclipseProject, final Packaging packaging,
+      final Throwable cause) {
+    // Others may try again
+    packagingsByProject.remove(eclipseProject, packaging);
+    packaging.future.completeExceptionally(cause);
+  }
+
+  /**
+   * Registers a packaging of a project if the project was not packaged during the session yet.
+   *
+   * @return The packaging of the project that was started earlier in the session or
+   *         <code>null</code> if the passed packaging is registered and the caller should package
+   *         the project.
+   */
+  Packaging startPackaging(final IProject eclipseProject, final Packaging packaging) {
+    return packagingsByProject.putIfAbsent(eclipseProject, packaging);
+  }
+
+}
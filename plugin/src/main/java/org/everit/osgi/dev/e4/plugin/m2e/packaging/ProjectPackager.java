@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.maven.RepositoryUtils;
 import org.apache.maven.artifact.Artifact;
@@ -44,11 +45,19 @@ import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.embedder.IMaven;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.everit.osgi.dev.e4.plugin.EOSGiEclipsePlugin;
+import org.everit.osgi.dev.e4.plugin.EOSGiProjectManager;
 import org.everit.osgi.dev.e4.plugin.m2e.M2EUtil;
 import org.everit.osgi.dev.e4.plugin.m2e.MavenExecutionContextModifiers;
+import org.everit.osgi.dev.e4.plugin.m2e.MavenExecutionContextPool;
+import org.everit.osgi.dev.e4.plugin.m2e.ReverseDependencyIndex;
+import org.everit.osgi.dev.e4.plugin.util.ResourceRefresher;
 
 /**
  * Helper class to package a project with m2e maven.
@@ -65,9 +74,21 @@ public class ProjectPackager implements Closeable {
 
   private ChangedProjectTracker changedProjectTracker;
 
+  private final NonWorkspaceArtifactCache nonWorkspaceArtifactCache =
+      new NonWorkspaceArtifactCache();
+
   private final PackagedArtifactContainer packagedArtifactContainer =
       new PackagedArtifactContainer();
 
+  /**
+   * Set on the worker threads of {@link PackagingScheduler}. Those threads must not build or
+   * refresh eclipse projects, as the workspace is locked by the thread that waits for them, so the
+   * projects are collected to be refreshed later.
+   */
+  private final ThreadLocal<ResourceRefresher> deferredResourceRefresher = new ThreadLocal<>();
+
+  private final ReverseDependencyIndex reverseDependencyIndex = new ReverseDependencyIndex();
+
   private boolean addArtifactToProps(final Path projectBaseDirPath, final Properties props,
       final Artifact artifact, final String artifactPropKeyPrefix) {
 
@@ -88,6 +109,26 @@ public class ProjectPackager implements Closeable {
     return appendedToProps;
   }
 
+  private void awaitPackaging(final IProject eclipseProject,
+      final PackagingSession.Packaging packaging) throws CoreException {
+
+    if (packaging.thread == Thread.currentThread() && !packaging.future.isDone()) {
+      throw new RuntimeException(
+          "Cyclic packaging of projects. Requested the packaging of " + eclipseProject.getName()
+              + " during its own packaging");
+    }
+
+    try {
+      packaging.future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OperationCanceledException();
+    } catch (ExecutionException e) {
+      throw new CoreException(new Status(IStatus.ERROR, EOSGiEclipsePlugin.PLUGIN_ID,
+          "Error during packaging project: " + eclipseProject.getName(), e.getCause()));
+    }
+  }
+
   private void checkPackagingResultFile(final IMavenProjectFacade mavenProjectFacade,
       final IProgressMonitor monitor) throws CoreException {
     MavenProject mavenProject = mavenProjectFacade.getMavenProject(monitor);
@@ -109,7 +150,7 @@ public class ProjectPackager implements Closeable {
     if (projectArtifact != null) {
       File projectArtifactFile = projectArtifact.getFile();
       if (!projectArtifactFile.exists()) {
-        deleteFile(descriptionFile);
+        discardPackagingResult(mavenProjectFacade, descriptionFile);
         return;
       }
 
@@ -129,7 +170,7 @@ public class ProjectPackager implements Closeable {
 
       File attachedArtifactFile = attachedArtifact.getFile();
       if (!attachedArtifactFile.exists()) {
-        deleteFile(descriptionFile);
+        discardPackagingResult(mavenProjectFacade, descriptionFile);
         return;
       }
 
@@ -143,11 +184,10 @@ public class ProjectPackager implements Closeable {
               baseDir);
     }
 
-    // We have an oldest timestamp. Let's see if any of the files is newer.
-    if (nonTargetFileExistThatIsChangedLater(baseDir,
+    if (sourceFileChangedSincePackaging(baseDir,
         new File(mavenProject.getBuild().getDirectory()),
         oldestLastModified)) {
-      deleteFile(descriptionFile);
+      discardPackagingResult(mavenProjectFacade, descriptionFile);
     } else {
       this.packagedArtifactContainer.putArtifactsOfMavenProject(mavenProjectFacade,
           new ProjectArtifacts(projectArtifact, attachedArtifacts));
@@ -157,7 +197,11 @@ public class ProjectPackager implements Closeable {
   @Override
   public void close() {
     ResourcesPlugin.getWorkspace().removeResourceChangeListener(this.changedProjectTracker);
-
+    this.changedProjectTracker.close();
+    MavenPlugin.getMavenProjectRegistry()
+        .removeMavenProjectChangedListener(this.nonWorkspaceArtifactCache);
+    MavenPlugin.getMavenProjectRegistry()
+        .removeMavenProjectChangedListener(this.reverseDependencyIndex);
   }
 
   private String convertMavenArtifactToCoordinates(final Artifact artifact) {
@@ -219,6 +263,12 @@ public class ProjectPackager implements Closeable {
     return props;
   }
 
+  private SourceFileIndex createSourceFileIndex(final MavenProject mavenProject) {
+    return SourceFileIndex.create(mavenProject.getBasedir(),
+        new File(mavenProject.getBuild().getDirectory()),
+        SourceFileIndex.load(resolveSourceFileIndexFile(mavenProject)));
+  }
+
   /**
    * Creates a workspace reader for m2e that resolves maven modules that are eclipse projects on the
    * current workspace and resolves artifact files from the workspace instead of local maven
@@ -226,10 +276,14 @@ public class ProjectPackager implements Closeable {
    *
    * @param original
    *          The original workspace reader of the maven execution context.
+   * @param session
+   *          The packaging session of the operation that runs the maven execution.
    * @return A workspace reader that searches artifact files first in the eclipse workspace.
    */
-  public WorkspaceReader createWorkspaceReader(final WorkspaceReader original) {
-    return new EOSGiWorkspaceReader(original, this.packagedArtifactContainer, this);
+  public WorkspaceReader createWorkspaceReader(final WorkspaceReader original,
+      final PackagingSession session) {
+    return new EOSGiWorkspaceReader(original, this.packagedArtifactContainer, this, session,
+        this.nonWorkspaceArtifactCache);
   }
 
   private void deleteFile(final File file) {
@@ -238,11 +292,30 @@ public class ProjectPackager implements Closeable {
     }
   }
 
+  private void discardPackagingResult(final IMavenProjectFacade mavenProjectFacade,
+      final File descriptionFile) {
+    // The artifacts might have been put into the container concurrently
+    this.packagedArtifactContainer.removeArtifactFiles(mavenProjectFacade.getProject());
+    deleteFile(descriptionFile);
+  }
+
+  /**
+   * Gets the index of the workspace projects by their dependencies, so the projects and the
+   * environments that are affected by the change of a project can be found.
+   *
+   * @return The index of the dependent projects.
+   */
+  public ReverseDependencyIndex getReverseDependencyIndex() {
+    return reverseDependencyIndex;
+  }
+
   /**
    * Checks whether the project has any modifications since last successful m2e package.
    *
    * @param mavenProjectFacade
    *          The m2e project facade.
+   * @param session
+   *          The packaging session of the operation that memoizes the verdict.
    * @param monitor
    *          The monitor to show progress.
    * @return true if there was no file changed in the project since last build.
@@ -250,7 +323,7 @@ public class ProjectPackager implements Closeable {
    *           if something happens.
    */
   public boolean isProjectPackagedAndUpToDate(final IMavenProjectFacade mavenProjectFacade,
-      final IProgressMonitor monitor) throws CoreException {
+      final PackagingSession session, final IProgressMonitor monitor) throws CoreException {
 
     IProject eclipseProject = mavenProjectFacade.getProject();
 
@@ -258,9 +331,17 @@ public class ProjectPackager implements Closeable {
       return true;
     }
 
+    if (session.isKnownAsNotUpToDate(eclipseProject)) {
+      return false;
+    }
+
     checkPackagingResultFile(mavenProjectFacade, monitor);
 
-    return this.packagedArtifactContainer.getProjectArtifacts(eclipseProject) != null;
+    boolean upToDate = this.packagedArtifactContainer.getProjectArtifacts(eclipseProject) != null;
+    if (!upToDate) {
+      session.markNotUpToDate(eclipseProject);
+    }
+    return upToDate;
   }
 
   private boolean nonTargetFileExistThatIsChangedLater(final File basedir,
@@ -287,6 +368,49 @@ public class ProjectPackager implements Closeable {
     return false;
   }
 
+  private void notifyProjectChanged(final IProject eclipseProject) {
+    EOSGiEclipsePlugin eosgiEclipsePlugin = EOSGiEclipsePlugin.getDefault();
+    EOSGiProjectManager eosgiProjectManager =
+        (eosgiEclipsePlugin != null) ? eosgiEclipsePlugin.getEOSGiManager() : null;
+
+    if (eosgiProjectManager != null) {
+      eosgiProjectManager.projectChanged(eclipseProject);
+    }
+  }
+
+  /**
+   * Opens a session that memoizes the up-to-date checks of the projects until it is closed. The
+   * session should cover one dist or launch, as the changes of the projects during the session
+   * are not noticed, and it should be passed to every packaging call of the operation.
+   *
+   * @param monitor
+   *          The monitor of the operation that is checked for cancellation while the resource
+   *          changes that happened before the session are evaluated.
+   * @return The session that must be closed at the end of the operation.
+   */
+  public PackagingSession openSession(final IProgressMonitor monitor) {
+    return openSession(null, monitor);
+  }
+
+  /**
+   * Opens a session that memoizes the up-to-date checks of the projects until it is closed and
+   * runs the packaging of the projects in the execution contexts of the passed pool.
+   *
+   * @param contextPool
+   *          The pool of the operation that reuses the maven execution contexts or
+   *          <code>null</code>. The pool is not closed together with the session.
+   * @param monitor
+   *          The monitor of the operation that is checked for cancellation while the resource
+   *          changes that happened before the session are evaluated.
+   * @return The session that must be closed at the end of the operation.
+   */
+  public PackagingSession openSession(final MavenExecutionContextPool contextPool,
+      final IProgressMonitor monitor) {
+    // Artifacts of projects that were changed just before the session must not be reused
+    changedProjectTracker.awaitPendingChanges(monitor);
+    return new PackagingSession(contextPool);
+  }
+
   /**
    * Starts tracking of the eclipse projects.
    */
@@ -294,30 +418,95 @@ public class ProjectPackager implements Closeable {
     this.changedProjectTracker = new ChangedProjectTracker(
         (eclipseProject) -> {
           this.packagedArtifactContainer.removeArtifactFiles(eclipseProject);
+          notifyProjectChanged(eclipseProject);
         },
         (eclipseProject) -> this.packagedArtifactContainer.getProjectArtifacts(eclipseProject));
 
     ResourcesPlugin.getWorkspace().addResourceChangeListener(this.changedProjectTracker);
+    MavenPlugin.getMavenProjectRegistry()
+        .addMavenProjectChangedListener(this.nonWorkspaceArtifactCache);
+    MavenPlugin.getMavenProjectRegistry()
+        .addMavenProjectChangedListener(this.reverseDependencyIndex);
   }
 
   /**
    * Packages a maven project that is on the eclipse workspace and adds its artifact files to the
-   * workspace reader.
+   * workspace reader. If the project is being packaged by an other thread of the same session,
+   * the call waits for that packaging instead of packaging the project again. A project is
+   * packaged only once during a session.
    *
    * @param mavenProjectFacade
    *          The m2e project.
+   * @param session
+   *          The packaging session of the operation.
    * @param monitor
    *          The monitor to show progress.
    * @throws CoreException
    *           if anything happens.
    */
   public void packageProject(final IMavenProjectFacade mavenProjectFacade,
+      final PackagingSession session, final IProgressMonitor monitor) throws CoreException {
+
+    IProject eclipseProject = mavenProjectFacade.getProject();
+    PackagingSession.Packaging packaging = new PackagingSession.Packaging();
+    PackagingSession.Packaging earlierPackaging =
+        session.startPackaging(eclipseProject, packaging);
+
+    if (earlierPackaging != null) {
+      awaitPackaging(eclipseProject, earlierPackaging);
+      return;
+    }
+
+    try {
+      packageProjectInContext(mavenProjectFacade, session, monitor);
+    } catch (CoreException | RuntimeException | Error e) {
+      session.packagingFailed(eclipseProject, packaging, e);
+      throw e;
+    }
+    packaging.future.complete(null);
+  }
+
+  /**
+   * Packages a project without building or refreshing any eclipse project on the current thread.
+   * The build directories of the projects that are packaged during the call (including the ones
+   * that are packaged on demand during artifact resolution) are added to the passed refresher, so
+   * the caller can refresh them later.
+   *
+   * @param mavenProjectFacade
+   *          The m2e project.
+   * @param session
+   *          The packaging session of the operation.
+   * @param resourceRefresher
+   *          The refresher where the build directories of the packaged projects are added.
+   * @param monitor
+   *          The monitor to show progress.
+   * @throws CoreException
+   *           if anything happens.
+   */
+  void packageProjectDeferringRefresh(final IMavenProjectFacade mavenProjectFacade,
+      final PackagingSession session, final ResourceRefresher resourceRefresher,
       final IProgressMonitor monitor) throws CoreException {
 
-    mavenProjectFacade.getProject().build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+    deferredResourceRefresher.set(resourceRefresher);
+    try {
+      packageProject(mavenProjectFacade, session, monitor);
+    } finally {
+      deferredResourceRefresher.remove();
+    }
+  }
+
+  private void packageProjectInContext(final IMavenProjectFacade mavenProjectFacade,
+      final PackagingSession session, final IProgressMonitor monitor) throws CoreException {
+
+    ResourceRefresher deferredRefresher = deferredResourceRefresher.get();
+    IProject eclipseProject = mavenProjectFacade.getProject();
+
+    if (deferredRefresher == null) {
+      eclipseProject.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+    }
 
     MavenExecutionContextModifiers modifiers = new MavenExecutionContextModifiers();
-    modifiers.workspaceReaderReplacer = (original) -> createWorkspaceReader(original);
+    modifiers.workspaceReaderReplacer = (original) -> createWorkspaceReader(original, session);
 
     M2EUtil.executeInContext(mavenProjectFacade, modifiers, (context, monitor1) -> {
       IMaven maven = MavenPlugin.getMaven();
@@ -343,13 +532,31 @@ public class ProjectPackager implements Closeable {
 
       saveOrReplaceAttachedFilesDescription(mavenProject);
 
-      mavenProjectFacade.getProject().refreshLocal(IProject.DEPTH_INFINITE, monitor1);
+      // The snapshot is taken after packaging, as some plugins write files outside of the build
+      // directory (e.g. the manifest of maven-bundle-plugin with manifestLocation=META-INF). Such
+      // files would be different at every up-to-date check if the snapshot was taken earlier.
+      // Sources edited in the workspace during packaging are reported by the change tracker.
+      createSourceFileIndex(mavenProject).save(resolveSourceFileIndexFile(mavenProject));
+
+      session.markPackaged(eclipseProject);
+
+      // Only the build directory is refreshed. Files that plugins write to other folders (e.g. the
+      // manifest of maven-bundle-plugin with manifestLocation=META-INF) stay out of sync until
+      // the next refresh of the workspace.
+      File buildDirectory = new File(mavenProject.getBuild().getDirectory());
+      if (deferredRefresher == null) {
+        ResourceRefresher resourceRefresher = new ResourceRefresher();
+        resourceRefresher.addFolder(buildDirectory);
+        resourceRefresher.refresh(monitor1);
+      } else {
+        deferredRefresher.addFolder(buildDirectory);
+      }
 
       this.packagedArtifactContainer.putArtifactsOfMavenProject(mavenProjectFacade,
           new ProjectArtifacts(toAetherArtifact(mavenProject.getArtifact()),
               RepositoryUtils.toArtifacts(mavenProject.getAttachedArtifacts())));
       return null;
-    }, monitor);
+    }, session.contextPool, monitor);
   }
 
   private Properties readDescriptionFileToPropertiesObj(final File descriptionFile) {
@@ -375,6 +582,10 @@ public class ProjectPackager implements Closeable {
     return attachedFilesDescriptionFile;
   }
 
+  private File resolveSourceFileIndexFile(final MavenProject mavenProject) {
+    return new File(mavenProject.getBuild().getDirectory(), SourceFileIndex.INDEX_FILE_NAME);
+  }
+
   private void saveOrReplaceAttachedFilesDescription(final MavenProject mavenProject) {
 
     File attachedFilesDescriptionFile = resolveAttachedFilesDescriptionFile(mavenProject);
@@ -427,6 +638,32 @@ public class ProjectPackager implements Closeable {
     }
   }
 
+  private boolean sourceFileChangedSincePackaging(final File baseDir,
+      final File buildDirectoryFile, final long oldestLastModified) {
+
+    File indexFile = new File(buildDirectoryFile, SourceFileIndex.INDEX_FILE_NAME);
+    SourceFileIndex sourceFileIndex = SourceFileIndex.load(indexFile);
+
+    if (sourceFileIndex == null) {
+      // Packaged by an older version of the plugin. Let's see if any of the files is newer than
+      // the oldest artifact and create the index if not.
+      if (nonTargetFileExistThatIsChangedLater(baseDir, buildDirectoryFile, oldestLastModified)) {
+        return true;
+      }
+      SourceFileIndex.create(baseDir, buildDirectoryFile, null).save(indexFile);
+      return false;
+    }
+
+    if (sourceFileIndex.isChanged(baseDir, buildDirectoryFile)) {
+      return true;
+    }
+
+    if (sourceFileIndex.isModified()) {
+      sourceFileIndex.save(indexFile);
+    }
+    return false;
+  }
+
   private org.eclipse.aether.artifact.Artifact toAetherArtifact(final Artifact artifact) {
     if (artifact == null) {
       return null;
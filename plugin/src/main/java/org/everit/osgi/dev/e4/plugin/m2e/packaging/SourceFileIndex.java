@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.m2e.packaging;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Persistent index of the source files of a project. Source files are all files under the base
+ * directory of the project except the build directory. The index stores the size, the last
+ * modification time and the content digest of each file, so a later staleness check can compare
+ * the current state of the project to the indexed one.
+ *
+ * <p>
+ * The check is not an incremental diff: the size and the last modification time of every indexed
+ * file is read at each check, as changing the content of a file does not change the modification
+ * time of its directory. The index only spares work on unchanged files and directories. Directories
+ * are stored with their last modification time and they are listed again only if that time
+ * changed. The digest of a file is calculated only if its size or modification time does not prove
+ * that it is unchanged. If only the modification time of a file changed but its content did not,
+ * the file is not considered as changed.
+ */
+public class SourceFileIndex {
+
+  /**
+   * Indexed state of one file or directory.
+   */
+  private static final class IndexEntry {
+
+    final String digest;
+
+    final boolean directory;
+
+    final long lastModified;
+
+    final long size;
+
+    IndexEntry(final boolean directory, final long size, final long lastModified,
+        final String digest) {
+      this.directory = directory;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+  }
+
+  private static final String DIGEST_ALGORITHM = "SHA-1";
+
+  public static final String INDEX_FILE_NAME = ".eosgi-e4-packaging-index.properties";
+
+  private static final String INDEX_VERSION = "1";
+
+  private static final String KEY_CREATED = "/created";
+
+  private static final String KEY_VERSION = "/version";
+
+  /**
+   * Timestamps that are closer to the creation of the index than this value are not trusted, as the
+   * file might have been modified again within the timestamp resolution of the file system.
+   */
+  private static final long TIMESTAMP_RESOLUTION = 2000;
+
+  private static final String TYPE_DIRECTORY = "d";
+
+  private static final String TYPE_FILE = "f";
+
+  private static String calculateDigest(final File file) {
+    MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    final int bufferSize = 8192;
+    byte[] buffer = new byte[bufferSize];
+    try (InputStream in = new FileInputStream(file)) {
+      int r = in.read(buffer);
+      while (r >= 0) {
+        messageDigest.update(buffer, 0, r);
+        r = in.read(buffer);
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return Base64.getEncoder().encodeToString(messageDigest.digest());
+  }
+
+  private static String childPath(final String parentPath, final String childName) {
+    if (parentPath.isEmpty()) {
+      return childName;
+    }
+    return parentPath + '/' + childName;
+  }
+
+  /**
+   * Creates an index by walking through the files of a project.
+   *
+   * @param baseDir
+   *          The base directory of the project.
+   * @param buildDirectory
+   *          The build directory of the project that is excluded from the index.
+   * @param previous
+   *          An optional previous index. Digests of files that did not change since the previous
+   *          index was created are reused.
+   * @return The new index.
+   */
+  public static SourceFileIndex create(final File baseDir, final File buildDirectory,
+      final SourceFileIndex previous) {
+
+    SourceFileIndex index = new SourceFileIndex(System.currentTimeMillis());
+    index.indexDirectory(baseDir, "", buildDirectory, previous);
+    index.modified = true;
+    return index;
+  }
+
+  /**
+   * Loads a previously saved index.
+   *
+   * @param indexFile
+   *          The file that contains the index.
+   * @return The loaded index or <code>null</code> if the file does not exist or it was written by
+   *         an incompatible version of the plugin.
+   */
+  public static SourceFileIndex load(final File indexFile) {
+    if (!indexFile.exists()) {
+      return null;
+    }
+
+    Properties props = new Properties();
+    try (FileInputStream fin = new FileInputStream(indexFile)) {
+      props.load(fin);
+    } catch (IOException e) {
+      return null;
+    }
+
+    if (!INDEX_VERSION.equals(props.getProperty(KEY_VERSION))) {
+      return null;
+    }
+
+    SourceFileIndex index;
+    try {
+      index = new SourceFileIndex(Long.parseLong(props.getProperty(KEY_CREATED)));
+      for (String key : props.stringPropertyNames()) {
+        if (!key.startsWith("/")) {
+          index.putEntry(key, parseEntry(props.getProperty(key)));
+        }
+      }
+    } catch (RuntimeException e) {
+      return null;
+    }
+    return index;
+  }
+
+  private static IndexEntry parseEntry(final String value) {
+    String[] parts = value.split(":", -1);
+    if (TYPE_DIRECTORY.equals(parts[0])) {
+      return new IndexEntry(true, 0, Long.parseLong(parts[1]), null);
+    }
+    String digest = (parts[3].isEmpty()) ? null : parts[3];
+    return new IndexEntry(false, Long.parseLong(parts[1]), Long.parseLong(parts[2]), digest);
+  }
+
+  private static String parentPath(final String path) {
+    int lastSlashIndex = path.lastIndexOf('/');
+    if (lastSlashIndex < 0) {
+      return "";
+    }
+    return path.substring(0, lastSlashIndex);
+  }
+
+  private final Map<String, List<String>> childNamesByDirectory = new HashMap<>();
+
+  private long created;
+
+  private final Map<String, IndexEntry> entries = new HashMap<>();
+
+  private boolean modified = false;
+
+  private SourceFileIndex(final long created) {
+    this.created = created;
+  }
+
+  private boolean isDirectoryChanged(final File directory, final String path,
+      final File buildDirectory) {
+
+    IndexEntry directoryEntry = entries.get(path);
+    if (directoryEntry == null || !directoryEntry.directory) {
+      return true;
+    }
+
+    List<String> indexedChildNames =
+        childNamesByDirectory.getOrDefault(path, Collections.emptyList());
+
+    long lastModified = directory.lastModified();
+    if (lastModified != directoryEntry.lastModified || !isTimestampTrusted(lastModified)) {
+      String[] childNames = directory.list();
+      if (childNames == null) {
+        return true;
+      }
+
+      Set<String> currentChildNames = new HashSet<>();
+      for (String childName : childNames) {
+        if (!new File(directory, childName).equals(buildDirectory)) {
+          currentChildNames.add(childName);
+        }
+      }
+
+      if (currentChildNames.size() != indexedChildNames.size()
+          || !currentChildNames.containsAll(indexedChildNames)) {
+        return true;
+      }
+
+      entries.put(path, new IndexEntry(true, 0, lastModified, null));
+      modified = true;
+    }
+
+    for (String childName : indexedChildNames) {
+      File child = new File(directory, childName);
+      String childPath = childPath(path, childName);
+      IndexEntry childEntry = entries.get(childPath);
+
+      if (childEntry.directory) {
+        if (isDirectoryChanged(child, childPath, buildDirectory)) {
+          return true;
+        }
+      } else if (isFileChanged(child, childPath, childEntry)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isFileChanged(final File file, final String path, final IndexEntry fileEntry) {
+    long lastModified = file.lastModified();
+    if (lastModified == 0 || file.isDirectory()) {
+      return true;
+    }
+
+    long size = file.length();
+    if (size != fileEntry.size) {
+      return true;
+    }
+
+    if (lastModified == fileEntry.lastModified && isTimestampTrusted(lastModified)) {
+      return false;
+    }
+
+    String digest = calculateDigest(file);
+    if (digest == null || !digest.equals(fileEntry.digest)) {
+      return true;
+    }
+
+    // Content is the same, store the timestamp so the digest is not calculated next time
+    entries.put(path, new IndexEntry(false, size, lastModified, digest));
+    modified = true;
+    return false;
+  }
+
+  /**
+   * Checks whether any source file of the project is added, removed or changed since the index was
+   * created. Timestamps of files that are touched without changing their content are updated in
+   * the index. In that case {@link #isModified()} will return <code>true</code> and the index
+   * should be saved again.
+   *
+   * @param baseDir
+   *          The base directory of the project.
+   * @param buildDirectory
+   *          The build directory of the project.
+   * @return <code>true</code> if there is any difference between the index and the files of the
+   *         project.
+   */
+  public boolean isChanged(final File baseDir, final File buildDirectory) {
+    long checkStartTime = System.currentTimeMillis();
+    boolean changed = isDirectoryChanged(baseDir, "", buildDirectory);
+    if (!changed && modified) {
+      // Every entry is verified now, so timestamps before the check can be trusted next time
+      created = checkStartTime;
+    }
+    return changed;
+  }
+
+  /**
+   * Whether the index was changed since it was loaded or created.
+   *
+   * @return <code>true</code> if the index should be saved.
+   */
+  public boolean isModified() {
+    return modified;
+  }
+
+  private boolean isTimestampTrusted(final long timestamp) {
+    return timestamp + TIMESTAMP_RESOLUTION < created;
+  }
+
+  private void indexDirectory(final File directory, final String path,
+      final File buildDirectory, final SourceFileIndex previous) {
+
+    putEntry(path, new IndexEntry(true, 0, directory.lastModified(), null));
+
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      if (!file.equals(buildDirectory)) {
+        String childPath = childPath(path, file.getName());
+        if (file.isDirectory()) {
+          indexDirectory(file, childPath, buildDirectory, previous);
+        } else {
+          putEntry(childPath, indexFile(file, childPath, previous));
+        }
+      }
+    }
+  }
+
+  private IndexEntry indexFile(final File file, final String path,
+      final SourceFileIndex previous) {
+
+    long size = file.length();
+    long lastModified = file.lastModified();
+
+    if (previous != null) {
+      IndexEntry previousEntry = previous.entries.get(path);
+      if (previousEntry != null && !previousEntry.directory && previousEntry.digest != null
+          && previousEntry.size == size && previousEntry.lastModified == lastModified
+          && previous.isTimestampTrusted(lastModified)) {
+
+        return previousEntry;
+      }
+    }
+    return new IndexEntry(false, size, lastModified, calculateDigest(file));
+  }
+
+  private void putEntry(final String path, final IndexEntry entry) {
+    entries.put(path, entry);
+    if (!path.isEmpty()) {
+      childNamesByDirectory.computeIfAbsent(parentPath(path), (key) -> new ArrayList<>())
+          .add(path.substring(path.lastIndexOf('/') + 1));
+    }
+  }
+
+  /**
+   * Saves the index into a file.
+   *
+   * @param indexFile
+   *          The file where the index should be saved.
+   */
+  public void save(final File indexFile) {
+    Properties props = new Properties();
+    props.setProperty(KEY_VERSION, INDEX_VERSION);
+    props.setProperty(KEY_CREATED, String.valueOf(created));
+
+    for (Entry<String, IndexEntry> entry : entries.entrySet()) {
+      IndexEntry indexEntry = entry.getValue();
+      String value;
+      if (indexEntry.directory) {
+        value = TYPE_DIRECTORY + ':' + indexEntry.lastModified;
+      } else {
+        value = TYPE_FILE + ':' + indexEntry.size + ':' + indexEntry.lastModified + ':'
+            + ((indexEntry.digest != null) ? indexEntry.digest : "");
+      }
+      props.setProperty(entry.getKey(), value);
+    }
+
+    try (FileOutputStream fout = new FileOutputStream(indexFile)) {
+      props.store(fout, null);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot save source file index: " + indexFile, e);
+    }
+    modified = false;
+  }
+}
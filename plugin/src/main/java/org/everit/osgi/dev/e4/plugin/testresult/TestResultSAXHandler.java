@@ -15,6 +15,8 @@
  */
 package org.everit.osgi.dev.e4.plugin.testresult;
 
+import java.io.IOException;
+
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -66,14 +68,12 @@ public class TestResultSAXHandler extends DefaultHandler {
     this.testResultSummarizer = testResultSummarizer;
   }
 
-  private void addEmptyTestSuite() {
+  private void addEmptyTestSuite() throws SAXException {
 
-    testResultSummarizer.xmlBody.append("  <testcase name=\"")
-        .append(StringEscapeUtils.escapeXml(testSuiteAttributes.name))
-        .append("\" classname=\"").append(StringEscapeUtils.escapeXml(testSuiteAttributes.name))
-        .append("\" time=\"")
-        .append(StringEscapeUtils.escapeXml(testSuiteAttributes.time))
-        .append("\" ignored=\"true\"/>\n");
+    write("  <testcase name=\"", StringEscapeUtils.escapeXml(testSuiteAttributes.name),
+        "\" classname=\"", StringEscapeUtils.escapeXml(testSuiteAttributes.name),
+        "\" time=\"", StringEscapeUtils.escapeXml(testSuiteAttributes.time),
+        "\" ignored=\"true\"/>\n");
 
     testResultSummarizer.ignored++;
     testResultSummarizer.tests++;
@@ -83,8 +83,7 @@ public class TestResultSAXHandler extends DefaultHandler {
   @Override
   public void characters(final char[] ch, final int start, final int length) throws SAXException {
     if (inErrorOrFailureElement) {
-      testResultSummarizer.xmlBody
-          .append(StringEscapeUtils.escapeXml(String.valueOf(ch, start, length)));
+      write(StringEscapeUtils.escapeXml(String.valueOf(ch, start, length)));
     }
 
   }
@@ -95,19 +94,19 @@ public class TestResultSAXHandler extends DefaultHandler {
 
     switch (qName) {
       case "error":
-        testResultSummarizer.xmlBody.append("      </error>\n");
+        write("      </error>\n");
         inErrorOrFailureElement = false;
         break;
       case "failure":
-        testResultSummarizer.xmlBody.append("      </failure>\n");
+        write("      </failure>\n");
         inErrorOrFailureElement = false;
         break;
       case "testcase":
         if (testCaseHadErrorOrFailure) {
-          testResultSummarizer.xmlBody.append("    </testcase>\n");
+          write("    </testcase>\n");
           testCaseHadErrorOrFailure = false;
         } else {
-          testResultSummarizer.xmlBody.append("/>\n");
+          write("/>\n");
         }
         break;
       case "testsuite":
@@ -115,7 +114,7 @@ public class TestResultSAXHandler extends DefaultHandler {
           addEmptyTestSuite();
           testSuiteAttributes = null;
         } else {
-          testResultSummarizer.xmlBody.append("  </testsuite>\n");
+          write("  </testsuite>\n");
         }
         break;
       default:
@@ -145,12 +144,12 @@ public class TestResultSAXHandler extends DefaultHandler {
         startTestCaseElement(attributes);
         break;
       case "error":
-        testResultSummarizer.xmlBody.append(">\n      <error>");
+        write(">\n      <error>");
         inErrorOrFailureElement = true;
         testCaseHadErrorOrFailure = true;
         break;
       case "failure":
-        testResultSummarizer.xmlBody.append(">\n      <failure>");
+        write(">\n      <failure>");
         inErrorOrFailureElement = true;
         testCaseHadErrorOrFailure = true;
         break;
@@ -160,28 +159,35 @@ public class TestResultSAXHandler extends DefaultHandler {
 
   }
 
-  private void startTestCaseElement(final Attributes attributes) {
+  private void startTestCaseElement(final Attributes attributes) throws SAXException {
     String name = attributes.getValue("name");
     String classname = attributes.getValue("classname");
     String time = attributes.getValue("time");
-    testResultSummarizer.xmlBody.append("    <testcase name=\"")
-        .append(StringEscapeUtils.escapeXml(name))
-        .append("\" classname=\"").append(StringEscapeUtils.escapeXml(classname))
-        .append("\" time=\"").append(StringEscapeUtils.escapeXml(time)).append("\"");
+    write("    <testcase name=\"", StringEscapeUtils.escapeXml(name),
+        "\" classname=\"", StringEscapeUtils.escapeXml(classname),
+        "\" time=\"", StringEscapeUtils.escapeXml(time), "\"");
 
   }
 
-  private void startTestSuiteWithTestCaseInside() {
+  private void startTestSuiteWithTestCaseInside() throws SAXException {
     testResultSummarizer.tests += testSuiteAttributes.tests;
     testResultSummarizer.started += testSuiteAttributes.tests;
     testResultSummarizer.errors += testSuiteAttributes.errors;
     testResultSummarizer.failures += testSuiteAttributes.failures;
     testResultSummarizer.ignored += testSuiteAttributes.skipped;
 
-    testResultSummarizer.xmlBody.append("  <testsuite name=\"")
-        .append(StringEscapeUtils.escapeXml(testSuiteAttributes.name))
-        .append("\" time=\"").append(StringEscapeUtils.escapeXml(testSuiteAttributes.time))
-        .append("\">\n");
+    write("  <testsuite name=\"", StringEscapeUtils.escapeXml(testSuiteAttributes.name),
+        "\" time=\"", StringEscapeUtils.escapeXml(testSuiteAttributes.time), "\">\n");
+  }
+
+  private void write(final String... parts) throws SAXException {
+    try {
+      for (String part : parts) {
+        testResultSummarizer.xmlBody.append(part);
+      }
+    } catch (IOException e) {
+      throw new SAXException(e);
+    }
   }
 
 }
@@ -15,6 +15,8 @@
  */
 package org.everit.osgi.dev.e4.plugin.testresult;
 
+import java.io.Writer;
+
 /**
  * Summarizer of test results.
  */
@@ -32,6 +34,10 @@ public class TestResultSummarizer {
 
   public int tests = 0;
 
-  public StringBuilder xmlBody = new StringBuilder();
+  /**
+   * The writer that the testsuite elements are streamed into, so the body of big test runs is not
+   * held in memory.
+   */
+  public Writer xmlBody;
 
 }
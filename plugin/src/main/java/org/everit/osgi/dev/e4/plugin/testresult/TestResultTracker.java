@@ -15,15 +15,21 @@
  */
 package org.everit.osgi.dev.e4.plugin.testresult;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
@@ -34,10 +40,15 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Optional;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -60,13 +71,43 @@ import org.xml.sax.SAXException;
  */
 public class TestResultTracker implements Closeable {
 
+  /**
+   * The result of parsing a test result file that is reused until the size or the modification
+   * time of the file changes.
+   */
+  private static class ParsedTestResultFile {
+
+    File bodyFile;
+
+    long lastModified;
+
+    long length;
+
+    TestResultSummarizer summary;
+
+    File testResultFile;
+
+  }
+
   /**
    * Information of a tracked JVM.
    */
   private static class TrackedJVMInfo {
 
+    /**
+     * The {@link System#nanoTime()} when the test results should be imported if no more events
+     * arrive until that time.
+     */
+    long importDeadline;
+
+    boolean importPending = false;
+
     long lastDistTimestamp;
 
+    final Map<File, ParsedTestResultFile> parsedTestResultFiles = new HashMap<>();
+
+    File parsedTestResultFolder;
+
     String projectName;
 
     File testResultFolder;
@@ -75,7 +116,29 @@ public class TestResultTracker implements Closeable {
 
   }
 
-  private static final long WATCH_EVENT_CHECK_PERIOD = 100;
+  /**
+   * The minimum number of test result files that are worth to be parsed on a separate thread.
+   */
+  private static final int MIN_FILE_COUNT_PER_CHUNK = 16;
+
+  private static final int PARSER_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The time in nanoseconds that must elapse after the last change in a test result folder before
+   * the test results are imported, so files that are being written are not imported partially.
+   */
+  private static final long TEST_RESULT_SETTLE_PERIOD = TimeUnit.MILLISECONDS.toNanos(200);
+
+  private static final long WATCHER_SHUTDOWN_TIMEOUT = 5000;
+
+  private static void addCounts(final TestResultSummarizer target,
+      final TestResultSummarizer source) {
+    target.errors += source.errors;
+    target.failures += source.failures;
+    target.ignored += source.ignored;
+    target.started += source.started;
+    target.tests += source.tests;
+  }
 
   private final AtomicBoolean closed = new AtomicBoolean(false);
 
@@ -85,12 +148,25 @@ public class TestResultTracker implements Closeable {
 
   private final SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
 
+  private final Queue<SAXParser> saxParserPool = new ConcurrentLinkedQueue<>();
+
+  private final ExecutorService testResultParserExecutor =
+      Executors.newFixedThreadPool(PARSER_THREAD_COUNT, (runnable) -> {
+        Thread thread = new Thread(runnable, "EOSGi test result parser");
+        thread.setDaemon(true);
+        return thread;
+      });
+
   private final Map<File, TrackedJVMInfo> trackedJVMsByResultFolder = new HashMap<>();
 
+  private final Map<WatchKey, TrackedJVMInfo> trackedJVMsByWatchKey = new HashMap<>();
+
   private final Runnable vmStateChangeListener;
 
   private final WatchService watchService;
 
+  private Thread watcherThread;
+
   /**
    * Constructor that initializes the folder and file watch service.
    */
@@ -107,24 +183,33 @@ public class TestResultTracker implements Closeable {
     checkJVMRunningChanges();
   }
 
-  private void addContentOfTestResultFileToSummary(final File testResultFile,
-      final TestResultSummarizer summarizedTestResult) {
-
-    SAXParser saxParser;
-    try {
-      saxParser = saxParserFactory.newSAXParser();
-    } catch (ParserConfigurationException | SAXException e) {
-      throw new RuntimeException(e);
-    }
+  private void addContentOfTestResultFileToSummary(final SAXParser saxParser,
+      final File testResultFile, final TestResultSummarizer summarizedTestResult) {
 
     try {
       saxParser.parse(testResultFile, new TestResultSAXHandler(summarizedTestResult));
     } catch (SAXException | IOException e) {
       eosgiLog.error("Cannot parse test file: " + testResultFile, e);
+    } finally {
+      saxParser.reset();
     }
 
   }
 
+  private SAXParser borrowSAXParser() {
+    SAXParser saxParser = saxParserPool.poll();
+    if (saxParser != null) {
+      return saxParser;
+    }
+    synchronized (saxParserFactory) {
+      try {
+        return saxParserFactory.newSAXParser();
+      } catch (ParserConfigurationException | SAXException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
   private synchronized void checkJVMRunningChanges() {
     Set<EnvironmentRuntimeInfo> runtimeInformations = eosgiVMManager.getRuntimeInformations();
     Set<File> testResultFoldersWithoutRunningJVM =
@@ -147,46 +232,25 @@ public class TestResultTracker implements Closeable {
 
     for (File folder : testResultFoldersWithoutRunningJVM) {
       TrackedJVMInfo trackedJVMInfo = trackedJVMsByResultFolder.remove(folder);
+      trackedJVMsByWatchKey.remove(trackedJVMInfo.watchKey);
       trackedJVMInfo.watchKey.cancel();
-    }
-    trackedJVMsByResultFolder.keySet().removeAll(testResultFoldersWithoutRunningJVM);
-  }
-
-  private synchronized void checkTestResultFolder(
-      final Map<TrackedJVMInfo, Long> iterationIdByTrackedJVM) {
-
-    long currentIterationId = System.nanoTime();
-
-    for (Iterator<Entry<File, TrackedJVMInfo>> iterator =
-        trackedJVMsByResultFolder.entrySet().iterator(); iterator.hasNext();) {
-
-      Entry<File, TrackedJVMInfo> trackedEntry = iterator.next();
-      File resultFolder = trackedEntry.getKey();
-      TrackedJVMInfo trackedJVMInfo = trackedEntry.getValue();
-      if (trackedJVMInfo.watchKey.isValid()) {
-        List<WatchEvent<?>> events = trackedJVMInfo.watchKey.pollEvents();
-        if (!events.isEmpty()) {
-          iterationIdByTrackedJVM.put(trackedJVMInfo, currentIterationId);
-        }
-      } else {
-        handleInvalidWatchKey(iterator, resultFolder, trackedJVMInfo);
-      }
-    }
-
-    for (Iterator<Entry<TrackedJVMInfo, Long>> iterator =
-        iterationIdByTrackedJVM.entrySet().iterator(); iterator
-            .hasNext();) {
-
-      Entry<TrackedJVMInfo, Long> entry = iterator.next();
-      if (entry.getValue().longValue() != currentIterationId) {
-        iterator.remove();
-        importTestFilesOfTrackedJVMIntoEclipseJUnitView(entry.getKey());
+      if (trackedJVMInfo.importPending) {
+        // Results that were written right before the JVM stopped
+        trackedJVMInfo.importPending = false;
+        importTestFilesOfTrackedJVMIntoEclipseJUnitView(trackedJVMInfo);
       }
+      discardParsedTestResultFiles(trackedJVMInfo);
     }
+    trackedJVMsByResultFolder.keySet().removeAll(testResultFoldersWithoutRunningJVM);
   }
 
+  /**
+   * Stops tracking the test results. Closing the watch service wakes up the watcher thread that is
+   * waited for without holding the lock of the tracker, so an import that is in progress can
+   * finish.
+   */
   @Override
-  public synchronized void close() {
+  public void close() {
     if (closed.getAndSet(true)) {
       return;
     }
@@ -196,6 +260,13 @@ public class TestResultTracker implements Closeable {
       throw new UncheckedIOException(e);
     } finally {
       eosgiVMManager.removeStateChangeListener(vmStateChangeListener);
+      testResultParserExecutor.shutdownNow();
+      waitForWatcherThread();
+      synchronized (this) {
+        for (TrackedJVMInfo trackedJVMInfo : trackedJVMsByResultFolder.values()) {
+          discardParsedTestResultFiles(trackedJVMInfo);
+        }
+      }
     }
   }
 
@@ -206,64 +277,231 @@ public class TestResultTracker implements Closeable {
         StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.OVERFLOW);
   }
 
-  private void handleInvalidWatchKey(final Iterator<Entry<File, TrackedJVMInfo>> iterator,
-      final File resultFolder, final TrackedJVMInfo trackedJVMInfo) {
+  private void deleteBodyFile(final ParsedTestResultFile parsedTestResultFile) {
+    if (parsedTestResultFile.bodyFile.exists() && !parsedTestResultFile.bodyFile.delete()) {
+      eosgiLog.warning("Cannot delete temporary file: " + parsedTestResultFile.bodyFile);
+    }
+  }
+
+  private void discardParsedTestResultFiles(final TrackedJVMInfo trackedJVMInfo) {
+    trackedJVMInfo.parsedTestResultFiles.clear();
+    File parsedTestResultFolder = trackedJVMInfo.parsedTestResultFolder;
+    if (parsedTestResultFolder == null) {
+      return;
+    }
+    trackedJVMInfo.parsedTestResultFolder = null;
+
+    // Files of failed parsings might be in the folder that are not in the map
+    File[] bodyFiles = parsedTestResultFolder.listFiles();
+    if (bodyFiles != null) {
+      for (File bodyFile : bodyFiles) {
+        if (!bodyFile.delete()) {
+          eosgiLog.warning("Cannot delete temporary file: " + bodyFile);
+        }
+      }
+    }
+    if (!parsedTestResultFolder.delete()) {
+      eosgiLog.warning("Cannot delete temporary folder: " + parsedTestResultFolder);
+    }
+  }
+
+  private void handleInvalidWatchKey(final TrackedJVMInfo trackedJVMInfo) {
+    trackedJVMsByWatchKey.remove(trackedJVMInfo.watchKey);
+    File resultFolder = trackedJVMInfo.testResultFolder;
 
     // Probably someone deleted the folder so we try to re-create it
     if (resultFolder.exists() || resultFolder.mkdirs()) {
       try {
         trackedJVMInfo.watchKey = createWatchKeyForTestResultFolder(resultFolder);
+        trackedJVMsByWatchKey.put(trackedJVMInfo.watchKey, trackedJVMInfo);
+        return;
       } catch (IOException e) {
         eosgiLog.error("Cannot watch test result folder", e);
-        iterator.remove();
       }
     } else {
       eosgiLog.error("Cannot create test result folder:" + resultFolder);
-      iterator.remove();
+    }
+    trackedJVMsByResultFolder.remove(resultFolder);
+    discardParsedTestResultFiles(trackedJVMInfo);
+  }
+
+  private synchronized void handleWatchKey(final WatchKey watchKey) {
+    List<WatchEvent<?>> events = watchKey.pollEvents();
+    TrackedJVMInfo trackedJVMInfo = trackedJVMsByWatchKey.get(watchKey);
+    if (trackedJVMInfo == null) {
+      // The JVM stopped since the key was signalled
+      return;
+    }
+
+    if (!events.isEmpty()) {
+      trackedJVMInfo.importPending = true;
+      trackedJVMInfo.importDeadline = System.nanoTime() + TEST_RESULT_SETTLE_PERIOD;
+    }
+
+    if (!watchKey.reset()) {
+      handleInvalidWatchKey(trackedJVMInfo);
+    }
+  }
+
+  private synchronized void importSettledTestResults() {
+    long now = System.nanoTime();
+    for (TrackedJVMInfo trackedJVMInfo : new ArrayList<>(trackedJVMsByResultFolder.values())) {
+      if (trackedJVMInfo.importPending && now - trackedJVMInfo.importDeadline >= 0) {
+        trackedJVMInfo.importPending = false;
+        importTestFilesOfTrackedJVMIntoEclipseJUnitView(trackedJVMInfo);
+      }
     }
   }
 
   private void importTestFilesOfTrackedJVMIntoEclipseJUnitView(
       final TrackedJVMInfo trackedJVMInfo) {
 
-    Optional<TestResultSummarizer> optionalSummarizedTestResult =
-        summarizeTestResults(trackedJVMInfo);
+    List<File> testResultFiles = resolveNewerNonEmptyXMLFilesThanLastDist(trackedJVMInfo);
 
-    if (!optionalSummarizedTestResult.isPresent()) {
+    boolean changed;
+    try {
+      changed = updateParsedTestResultFiles(trackedJVMInfo, testResultFiles);
+    } catch (IOException e) {
+      eosgiLog.error("Cannot parse test result files in folder: "
+          + trackedJVMInfo.testResultFolder, e);
       return;
     }
 
-    TestResultSummarizer summarizedTestResult = optionalSummarizedTestResult.get();
-
-    String sumFileContent = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testrun name=\""
-        + trackedJVMInfo.projectName + "\" project=\"" + trackedJVMInfo.projectName + "\" tests=\""
-        + summarizedTestResult.tests + "\" started=\"" + summarizedTestResult.started
-        + "\" failures=\"" + summarizedTestResult.failures + "\" errors=\""
-        + summarizedTestResult.errors + "\" ignored=\"" + summarizedTestResult.ignored + "\">\n"
-        + summarizedTestResult.xmlBody.toString() + "</testrun>\n";
+    if (!changed || testResultFiles.isEmpty()) {
+      return;
+    }
 
     File sumFile = null;
     try (DeleteOnCloseTempFileWrapper sumTempFile =
         new DeleteOnCloseTempFileWrapper("eosgi-testresult-", ".xml")) {
 
       sumFile = sumTempFile.getTempFile();
-      try (Writer writer =
-          new OutputStreamWriter(new FileOutputStream(sumFile), StandardCharsets.UTF_8)) {
-
-        writer.write(sumFileContent);
-      } catch (IOException e) {
-        eosgiLog.error("Cannot create new summarized test result file: " + sumFile, e);
-      }
+      writeSumFile(sumFile, trackedJVMInfo, testResultFiles);
 
       JUnitCore.importTestRunSession(sumFile);
+    } catch (IOException e) {
+      eosgiLog.error("Cannot create new summarized test result file: " + sumFile, e);
     } catch (CoreException e) {
-      eosgiLog.error("Cannot import test results from sum file '" + sumFile + "' with content:\n"
-          + sumFileContent, e);
+      eosgiLog.error("Cannot import test results from sum file: " + sumFile, e);
     }
   }
 
-  public void open() {
-    new Thread(this::watchTestResultFolders).start();
+  public synchronized void open() {
+    watcherThread = new Thread(this::watchTestResultFolders, "EOSGi test result watcher");
+    watcherThread.start();
+  }
+
+  private ParsedTestResultFile parseTestResultFile(final SAXParser saxParser,
+      final File testResultFile, final File parsedTestResultFolder) throws IOException {
+
+    ParsedTestResultFile result = new ParsedTestResultFile();
+    result.testResultFile = testResultFile;
+    // Read before parsing, so the file is parsed again if it is modified during the parsing
+    result.length = testResultFile.length();
+    result.lastModified = testResultFile.lastModified();
+    result.bodyFile = File.createTempFile("body-", ".xml", parsedTestResultFolder);
+    result.summary = new TestResultSummarizer();
+
+    try (Writer writer = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(result.bodyFile), StandardCharsets.UTF_8))) {
+
+      result.summary.xmlBody = writer;
+      addContentOfTestResultFileToSummary(saxParser, testResultFile, result.summary);
+    } finally {
+      result.summary.xmlBody = null;
+    }
+    return result;
+  }
+
+  private List<ParsedTestResultFile> parseTestResultFileChunk(final List<File> testResultFiles,
+      final File parsedTestResultFolder) throws IOException {
+
+    List<ParsedTestResultFile> result = new ArrayList<>(testResultFiles.size());
+    SAXParser saxParser = borrowSAXParser();
+    try {
+      for (File testResultFile : testResultFiles) {
+        result.add(parseTestResultFile(saxParser, testResultFile, parsedTestResultFolder));
+      }
+    } finally {
+      releaseSAXParser(saxParser);
+    }
+    return result;
+  }
+
+  /**
+   * Parses the test result files parallel. The files are split into continuous chunks and every
+   * file is streamed into a separate body file, so the parsed content is not held in memory.
+   *
+   * @param testResultFiles
+   *          The test result files.
+   * @param parsedTestResultFolder
+   *          The folder where the body files are created.
+   * @return The parsed files.
+   * @throws IOException
+   *           if the body files cannot be written.
+   */
+  private List<ParsedTestResultFile> parseTestResultFiles(final List<File> testResultFiles,
+      final File parsedTestResultFolder) throws IOException {
+
+    int chunkCount = Math.min(PARSER_THREAD_COUNT,
+        (testResultFiles.size() + MIN_FILE_COUNT_PER_CHUNK - 1) / MIN_FILE_COUNT_PER_CHUNK);
+    int chunkSize = (testResultFiles.size() + chunkCount - 1) / chunkCount;
+
+    List<Future<List<ParsedTestResultFile>>> futures = new ArrayList<>(chunkCount);
+    for (int fromIndex = 0; fromIndex < testResultFiles.size(); fromIndex += chunkSize) {
+      List<File> chunk = testResultFiles.subList(fromIndex,
+          Math.min(fromIndex + chunkSize, testResultFiles.size()));
+
+      futures.add(testResultParserExecutor
+          .submit(() -> parseTestResultFileChunk(chunk, parsedTestResultFolder)));
+    }
+
+    List<ParsedTestResultFile> result = new ArrayList<>(testResultFiles.size());
+    Throwable failure = null;
+    for (Future<List<ParsedTestResultFile>> future : futures) {
+      try {
+        result.addAll(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Parsing test results was interrupted");
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    if (failure != null) {
+      throw new RuntimeException(failure);
+    }
+    return result;
+  }
+
+  private void releaseSAXParser(final SAXParser saxParser) {
+    saxParserPool.offer(saxParser);
+  }
+
+  /**
+   * Resolves how long the watcher thread can wait for watch events before it has to import the
+   * test results of a JVM.
+   *
+   * @return The time to wait in nanoseconds or a negative number if there is no pending import.
+   */
+  private synchronized long resolveNanosUntilNextImport() {
+    long now = System.nanoTime();
+    long result = -1;
+    for (TrackedJVMInfo trackedJVMInfo : trackedJVMsByResultFolder.values()) {
+      if (trackedJVMInfo.importPending) {
+        long remaining = Math.max(0, trackedJVMInfo.importDeadline - now);
+        if (result < 0 || remaining < result) {
+          result = remaining;
+        }
+      }
+    }
+    return result;
   }
 
   private List<File> resolveNewerNonEmptyXMLFilesThanLastDist(final TrackedJVMInfo trackedJVMInfo) {
@@ -306,24 +544,7 @@ public class TestResultTracker implements Closeable {
     info.projectName = projectName;
     info.watchKey = watchKey;
     trackedJVMsByResultFolder.put(testResultFolderFile, info);
-  }
-
-  private Optional<TestResultSummarizer> summarizeTestResults(final TrackedJVMInfo trackedJVMInfo) {
-
-    List<File> testResultFiles = resolveNewerNonEmptyXMLFilesThanLastDist(trackedJVMInfo);
-
-    if (testResultFiles.isEmpty()) {
-      return Optional.empty();
-    }
-
-    TestResultSummarizer testResultSummarizer = new TestResultSummarizer();
-    testResultSummarizer.projectName = trackedJVMInfo.projectName;
-
-    for (File testResultFile : testResultFiles) {
-      addContentOfTestResultFileToSummary(testResultFile, testResultSummarizer);
-    }
-
-    return Optional.of(testResultSummarizer);
+    trackedJVMsByWatchKey.put(watchKey, info);
   }
 
   /**
@@ -343,17 +564,138 @@ public class TestResultTracker implements Closeable {
     }
   }
 
+  /**
+   * Parses the test result files that are new or changed since the previous call and forgets the
+   * files that are not test results of the current run anymore.
+   *
+   * @param trackedJVMInfo
+   *          The JVM whose test results are parsed.
+   * @param testResultFiles
+   *          The test result files of the current run.
+   * @return <code>true</code> if any file was parsed or forgotten.
+   * @throws IOException
+   *           if the parsed content cannot be stored.
+   */
+  private boolean updateParsedTestResultFiles(final TrackedJVMInfo trackedJVMInfo,
+      final List<File> testResultFiles) throws IOException {
+
+    Map<File, ParsedTestResultFile> parsedTestResultFiles = trackedJVMInfo.parsedTestResultFiles;
+    Set<File> testResultFileSet = new HashSet<>(testResultFiles);
+
+    boolean changed = false;
+    for (Iterator<ParsedTestResultFile> iterator =
+        parsedTestResultFiles.values().iterator(); iterator.hasNext();) {
+
+      ParsedTestResultFile parsedTestResultFile = iterator.next();
+      if (!testResultFileSet.contains(parsedTestResultFile.testResultFile)) {
+        iterator.remove();
+        deleteBodyFile(parsedTestResultFile);
+        changed = true;
+      }
+    }
+
+    List<File> changedTestResultFiles = new ArrayList<>();
+    for (File testResultFile : testResultFiles) {
+      ParsedTestResultFile parsedTestResultFile = parsedTestResultFiles.get(testResultFile);
+      if (parsedTestResultFile == null || parsedTestResultFile.length != testResultFile.length()
+          || parsedTestResultFile.lastModified != testResultFile.lastModified()) {
+
+        changedTestResultFiles.add(testResultFile);
+      }
+    }
+
+    if (changedTestResultFiles.isEmpty()) {
+      return changed;
+    }
+
+    if (trackedJVMInfo.parsedTestResultFolder == null) {
+      trackedJVMInfo.parsedTestResultFolder =
+          Files.createTempDirectory("eosgi-testresult-").toFile();
+    }
+
+    for (ParsedTestResultFile parsedTestResultFile : parseTestResultFiles(changedTestResultFiles,
+        trackedJVMInfo.parsedTestResultFolder)) {
+
+      ParsedTestResultFile previous =
+          parsedTestResultFiles.put(parsedTestResultFile.testResultFile, parsedTestResultFile);
+      if (previous != null) {
+        deleteBodyFile(previous);
+      }
+    }
+    return true;
+  }
+
+  private void waitForWatcherThread() {
+    Thread thread;
+    synchronized (this) {
+      thread = watcherThread;
+    }
+    if (thread == null || thread == Thread.currentThread()) {
+      return;
+    }
+    try {
+      thread.join(WATCHER_SHUTDOWN_TIMEOUT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Waits for the changes of the test result folders without holding the lock of the tracker. The
+   * wait is blocking until an import becomes due, so the thread does not use CPU while there are no
+   * changes.
+   */
   private void watchTestResultFolders() {
-    Map<TrackedJVMInfo, Long> iterationIdByTrackedJVM = new HashMap<>();
-    while (!closed.get()) {
-      checkTestResultFolder(iterationIdByTrackedJVM);
+    try {
+      while (!closed.get()) {
+        long nanosUntilNextImport = resolveNanosUntilNextImport();
+
+        WatchKey watchKey;
+        if (nanosUntilNextImport < 0) {
+          watchKey = watchService.take();
+        } else {
+          watchKey = watchService.poll(nanosUntilNextImport, TimeUnit.NANOSECONDS);
+        }
 
-      try {
-        Thread.sleep(WATCH_EVENT_CHECK_PERIOD);
-      } catch (InterruptedException e) {
-        close();
-        Thread.currentThread().interrupt();
+        if (watchKey != null) {
+          handleWatchKey(watchKey);
+        }
+        importSettledTestResults();
+      }
+    } catch (ClosedWatchServiceException e) {
+      return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+    }
+  }
+
+  private void writeSumFile(final File sumFile, final TrackedJVMInfo trackedJVMInfo,
+      final List<File> testResultFiles) throws IOException {
+
+    TestResultSummarizer summarizedTestResult = new TestResultSummarizer();
+    List<File> bodyFiles = new ArrayList<>(testResultFiles.size());
+    for (File testResultFile : testResultFiles) {
+      ParsedTestResultFile parsedTestResultFile =
+          trackedJVMInfo.parsedTestResultFiles.get(testResultFile);
+      addCounts(summarizedTestResult, parsedTestResultFile.summary);
+      bodyFiles.add(parsedTestResultFile.bodyFile);
+    }
+
+    String projectName = trackedJVMInfo.projectName;
+
+    String header = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testrun name=\""
+        + projectName + "\" project=\"" + projectName + "\" tests=\""
+        + summarizedTestResult.tests + "\" started=\"" + summarizedTestResult.started
+        + "\" failures=\"" + summarizedTestResult.failures + "\" errors=\""
+        + summarizedTestResult.errors + "\" ignored=\"" + summarizedTestResult.ignored + "\">\n";
+
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(sumFile))) {
+      out.write(header.getBytes(StandardCharsets.UTF_8));
+      for (File bodyFile : bodyFiles) {
+        Files.copy(bodyFile.toPath(), out);
       }
+      out.write("</testrun>\n".getBytes(StandardCharsets.UTF_8));
     }
   }
 
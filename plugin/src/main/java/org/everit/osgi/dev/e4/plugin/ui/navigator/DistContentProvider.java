@@ -15,6 +15,8 @@
  */
 package org.everit.osgi.dev.e4.plugin.ui.navigator;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.core.resources.IProject;
@@ -22,20 +24,81 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.jface.dialogs.ErrorDialog;
+import org.eclipse.jface.viewers.StructuredViewer;
 import org.eclipse.jface.viewers.TreeNodeContentProvider;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Shell;
 import org.everit.osgi.dev.e4.plugin.EOSGiEclipsePlugin;
+import org.everit.osgi.dev.e4.plugin.EOSGiNature;
 import org.everit.osgi.dev.e4.plugin.EOSGiProject;
+import org.everit.osgi.dev.e4.plugin.EOSGiProjectManager;
 import org.everit.osgi.dev.e4.plugin.ExecutableEnvironmentContainer;
 
 /**
  * TreeNodeContentProvider implementation for manage the EOSGI nodes in ProjectExplorer.
+ *
+ * <p>
+ * By default the EOSGi information of a project is resolved in the background. Until the
+ * resolution is finished, a {@link PendingNode} is shown under the project and the project item is
+ * refreshed when the information is available. The old blocking behavior can be switched on with
+ * the {@value #SYSPROP_SYNCHRONOUS_RESOLUTION} system property.
  */
 public class DistContentProvider extends TreeNodeContentProvider {
 
+  public static final String SYSPROP_SYNCHRONOUS_RESOLUTION = "eosgi.navigator.synchronous";
+
+  private final boolean asynchronous = !Boolean.getBoolean(SYSPROP_SYNCHRONOUS_RESOLUTION);
+
+  private final Map<IProject, Boolean> failedResolutions = new ConcurrentHashMap<>();
+
+  private final Map<IProject, Job> pendingResolutions = new ConcurrentHashMap<>();
+
+  private volatile StructuredViewer structuredViewer;
+
+  private Job createResolutionJob(final IProject project,
+      final AtomicReference<EOSGiProject> eosgiProjectReference) {
+
+    String taskName = "Getting EOSGi information of project: " + project.getName();
+
+    return Job.create(taskName, (monitor) -> {
+      SubMonitor subMonitor = SubMonitor.convert(monitor, taskName, 1);
+
+      try {
+        EOSGiProject eosgiProject =
+            EOSGiEclipsePlugin.getDefault().getEOSGiManager().get(project, subMonitor);
+        eosgiProjectReference.set(eosgiProject);
+        return Status.OK_STATUS;
+      } catch (CoreException e) {
+        IStatus status = e.getStatus();
+        Display.getDefault().asyncExec(() -> {
+          Shell shell = new Shell();
+          ErrorDialog.openError(shell, "Error",
+              "Error during refreshing content in Project Explorer for project: "
+                  + project.getName(),
+              status);
+        });
+        return status;
+      }
+
+    });
+  }
+
+  @Override
+  public void dispose() {
+    for (Job job : pendingResolutions.values()) {
+      job.cancel();
+    }
+    pendingResolutions.clear();
+    structuredViewer = null;
+    super.dispose();
+  }
+
   @Override
   public Object[] getChildren(final Object parentElement) {
     if (EOSGiEclipsePlugin.getDefault() == null) {
@@ -43,59 +106,108 @@ public class DistContentProvider extends TreeNodeContentProvider {
     }
 
     if (parentElement instanceof IProject) {
-      AtomicReference<EOSGiProject> eosgiProjectReference = new AtomicReference<>();
       IProject project = (IProject) parentElement;
       if (!project.isOpen()) {
         return new Object[0];
       }
 
-      String taskName = "Getting EOSGi information of project: " + project.getName();
-
-      Job job =
-          Job.create(taskName, (monitor) -> {
-            SubMonitor subMonitor = SubMonitor.convert(monitor, taskName, 1);
-
-            try {
-              EOSGiProject eosgiProject =
-                  EOSGiEclipsePlugin.getDefault().getEOSGiManager().get(project, subMonitor);
-              eosgiProjectReference.set(eosgiProject);
-              return Status.OK_STATUS;
-            } catch (CoreException e) {
-              IStatus status = e.getStatus();
-              Display.getDefault().asyncExec(() -> {
-                Shell shell = new Shell();
-                ErrorDialog.openError(shell, "Error",
-                    "Error during refreshing content in Project Explorer for project: "
-                        + project.getName(),
-                    status);
-              });
-              return status;
-            }
-
-          });
-      job.schedule();
-      try {
-        job.join();
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
+      if (asynchronous) {
+        return getProjectChildrenAsynchronously(project);
       }
-
-      if (eosgiProjectReference.get() == null) {
-        return new Object[0];
-      }
-      return new Object[] { eosgiProjectReference.get() };
+      return getProjectChildrenSynchronously(project);
     } else if (parentElement instanceof EOSGiProject) {
       ExecutableEnvironmentContainer executableEnvironmentContainer =
           ((EOSGiProject) parentElement).getExecutableEnvironmentContainer();
 
       return executableEnvironmentContainer.getExecutableEnvironments().toArray();
+    } else if (parentElement instanceof PendingNode) {
+      return new Object[0];
     } else {
       return super.getChildren(parentElement);
     }
   }
 
+  private Object[] getProjectChildrenAsynchronously(final IProject project) {
+    EOSGiProjectManager eosgiManager = EOSGiEclipsePlugin.getDefault().getEOSGiManager();
+    EOSGiProject eosgiProject = eosgiManager.getIfResolved(project);
+    if (eosgiProject != null) {
+      return new Object[] { eosgiProject };
+    }
+
+    if (failedResolutions.remove(project) != null || !hasEOSGiNature(project)) {
+      return new Object[0];
+    }
+
+    pendingResolutions.computeIfAbsent(project, (p) -> {
+      AtomicReference<EOSGiProject> eosgiProjectReference = new AtomicReference<>();
+      Job job = createResolutionJob(p, eosgiProjectReference);
+      job.addJobChangeListener(new JobChangeAdapter() {
+        @Override
+        public void done(final IJobChangeEvent event) {
+          pendingResolutions.remove(p);
+          if (eosgiProjectReference.get() == null) {
+            // Avoid resolving again and again when the project item is refreshed
+            failedResolutions.put(p, Boolean.TRUE);
+          }
+          refreshProjectItem(p);
+        }
+      });
+      job.schedule();
+      return job;
+    });
+
+    return new Object[] { new PendingNode(project) };
+  }
+
+  private Object[] getProjectChildrenSynchronously(final IProject project) {
+    AtomicReference<EOSGiProject> eosgiProjectReference = new AtomicReference<>();
+    Job job = createResolutionJob(project, eosgiProjectReference);
+    job.schedule();
+    try {
+      job.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (eosgiProjectReference.get() == null) {
+      return new Object[0];
+    }
+    return new Object[] { eosgiProjectReference.get() };
+  }
+
   @Override
   public boolean hasChildren(final Object element) {
     return element instanceof IProject || element instanceof EOSGiProject;
   }
+
+  private boolean hasEOSGiNature(final IProject project) {
+    try {
+      return project.hasNature(EOSGiNature.NATURE_ID);
+    } catch (CoreException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void inputChanged(final Viewer viewer, final Object oldInput, final Object newInput) {
+    super.inputChanged(viewer, oldInput, newInput);
+    if (viewer instanceof StructuredViewer) {
+      this.structuredViewer = (StructuredViewer) viewer;
+    } else {
+      this.structuredViewer = null;
+    }
+  }
+
+  private void refreshProjectItem(final IProject project) {
+    Display.getDefault().asyncExec(() -> {
+      StructuredViewer currentViewer = structuredViewer;
+      if (currentViewer == null) {
+        return;
+      }
+      Control control = currentViewer.getControl();
+      if (control != null && !control.isDisposed()) {
+        currentViewer.refresh(project);
+      }
+    });
+  }
 }
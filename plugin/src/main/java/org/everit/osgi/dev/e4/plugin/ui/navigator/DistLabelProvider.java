@@ -20,7 +20,6 @@ import org.eclipse.jface.viewers.LabelProvider;
 import org.eclipse.jface.viewers.LabelProviderChangedEvent;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.widgets.Display;
-import org.everit.osgi.dev.dist.util.attach.EOSGiVMManager;
 import org.everit.osgi.dev.e4.plugin.EOSGiEclipsePlugin;
 import org.everit.osgi.dev.e4.plugin.EOSGiProject;
 import org.everit.osgi.dev.e4.plugin.ExecutableEnvironment;
@@ -58,22 +57,27 @@ public class DistLabelProvider extends LabelProvider {
     super.dispose();
   }
 
-  public void executableEnvironmentChanged(final ExecutableEnvironment executableEnvironment) {
+  /**
+   * Notifies the listeners of this label provider in one event that the labels of the passed
+   * environments should be updated.
+   *
+   * @param executableEnvironments
+   *          The environments whose running state or changed state changed.
+   */
+  public void executableEnvironmentsChanged(final Object[] executableEnvironments) {
     Display.getDefault().asyncExec(
-        () -> fireLabelProviderChanged(new LabelProviderChangedEvent(this, executableEnvironment)));
+        () -> fireLabelProviderChanged(
+            new LabelProviderChangedEvent(this, executableEnvironments)));
   }
 
   @Override
   public Image getImage(final Object element) {
-    if (element instanceof EOSGiProject) {
+    if (element instanceof EOSGiProject || element instanceof PendingNode) {
       return IMAGE_EVERIT_LOGO;
     } else if (element instanceof ExecutableEnvironment) {
       ExecutableEnvironment executableEnvironment = (ExecutableEnvironment) element;
-      EOSGiVMManager eosgiVMManager =
-          EOSGiEclipsePlugin.getDefault().getEOSGiManager().getEosgiVMManager();
 
-      if (!eosgiVMManager.getRuntimeInformations(executableEnvironment.getEnvironmentId(),
-          executableEnvironment.getRootFolder()).isEmpty()) {
+      if (EOSGiEclipsePlugin.getDefault().getEOSGiManager().isRunning(executableEnvironment)) {
         return IMAGE_RUNNING_ENVIRONMENT;
       }
       return IMAGE_ENVIRONMENT;
@@ -92,7 +96,13 @@ public class DistLabelProvider extends LabelProvider {
       if (!eosgiEnvironment.isDefaultExecution()) {
         label += '@' + eosgiEnvironment.getExecutionId();
       }
+      if (EOSGiEclipsePlugin.getDefault().getEOSGiManager().isChangedSinceDist(eosgiEnvironment)) {
+        // Same marker as the dirty resources of the team decorators
+        label = "> " + label;
+      }
       return label;
+    } else if (element instanceof PendingNode) {
+      return "Resolving OSGi Environments...";
     } else {
       return super.getText(element);
     }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.ui.navigator;
+
+import org.eclipse.core.resources.IProject;
+
+/**
+ * Placeholder node that is shown under a project in the Project Explorer while the EOSGi
+ * information of the project is resolved in the background.
+ */
+public class PendingNode {
+
+  private final IProject project;
+
+  public PendingNode(final IProject project) {
+    this.project = project;
+  }
+
+  public IProject getProject() {
+    return project;
+  }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.util;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Monitor of a task that runs on a worker thread. {@link org.eclipse.core.runtime.SubMonitor} is
+ * not thread safe, so the workers cannot report to the monitor of the caller directly. This
+ * monitor reports the cancellation of the caller's monitor, while the progress is reported by the
+ * calling thread when the task is completed.
+ */
+public class CancelForwardingProgressMonitor extends NullProgressMonitor {
+
+  private final IProgressMonitor callerMonitor;
+
+  /**
+   * Constructor.
+   *
+   * @param callerMonitor
+   *          The monitor of the caller whose cancellation is reported.
+   */
+  public CancelForwardingProgressMonitor(final IProgressMonitor callerMonitor) {
+    this.callerMonitor = callerMonitor;
+  }
+
+  @Override
+  public boolean isCanceled() {
+    return super.isCanceled() || callerMonitor.isCanceled();
+  }
+}
@@ -15,6 +15,10 @@
  */
 package org.everit.osgi.dev.e4.plugin.util;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -23,8 +27,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 
-import org.apache.commons.collections.list.TreeList;
-
 /**
  * Helper class to flatten a DAG to an ordered list. Every element that is over another one in the
  * DAG will be in front of the other in the result list.
@@ -55,6 +57,27 @@ public final class DAGFlattener<K, T> {
 
   }
 
+  /**
+   * A node of the DAG that is being visited with the iterator of its children that are not
+   * processed yet.
+   *
+   * @param <K>
+   *          Key.
+   * @param <N>
+   *          Node type.
+   */
+  private static final class VisitFrame<K, N> {
+
+    final ListIterator<N> childIterator;
+
+    final KeyWithNodes<K, N> keyWithNodes;
+
+    VisitFrame(final KeyWithNodes<K, N> keyWithNodes, final List<N> children) {
+      this.keyWithNodes = keyWithNodes;
+      this.childIterator = children.listIterator(children.size());
+    }
+  }
+
   private final Function<T, List<T>> childResolver;
 
   private final Function<T, K> keyGenerator;
@@ -66,59 +89,53 @@ public final class DAGFlattener<K, T> {
   }
 
   /**
-   * Flattens a direct acyclic graph in a way that child nodes will be before parent ones for sure,
+   * Flattens a direct acyclic graph in a way that child nodes will be after parent ones for sure,
    * even if the same nodes appear multiple times in the graph.
    *
+   * <p>
+   * The result is the reverse post-order of a depth-first traversal that visits the children of
+   * every node from the last to the first one. The traversal uses an explicit stack, so the time
+   * is linear to the number of nodes and edges and deep graphs cannot overflow the call stack.
+   *
    * @param root
    *          The root node of the DAG.
    * @return The flattened DAG.
    */
   public List<KeyWithNodes<K, T>> flatten(final T root) {
     Map<K, KeyWithNodes<K, T>> visited = new HashMap<>();
+    List<KeyWithNodes<K, T>> postOrder = new ArrayList<>();
+    Deque<VisitFrame<K, T>> stack = new ArrayDeque<>();
+
+    stack.push(visit(keyGenerator.apply(root), root, visited));
+    while (!stack.isEmpty()) {
+      VisitFrame<K, T> frame = stack.peek();
+      VisitFrame<K, T> childFrame = null;
+      while (childFrame == null && frame.childIterator.hasPrevious()) {
+        T childNode = frame.childIterator.previous();
+        K childNodeKey = keyGenerator.apply(childNode);
+        if (!visited.containsKey(childNodeKey)) {
+          childFrame = visit(childNodeKey, childNode, visited);
+        }
+      }
 
-    @SuppressWarnings("unchecked")
-    List<KeyWithNodes<K, T>> result = new TreeList();
+      if (childFrame != null) {
+        stack.push(childFrame);
+      } else {
+        stack.pop();
+        postOrder.add(frame.keyWithNodes);
+      }
+    }
 
-    ListIterator<KeyWithNodes<K, T>> resultIterator = result.listIterator();
-    flattenRecurse(keyGenerator.apply(root), root, resultIterator, visited);
-    return result;
+    Collections.reverse(postOrder);
+    return postOrder;
   }
 
-  private void flattenRecurse(final K nodeKey, final T node,
-      final ListIterator<KeyWithNodes<K, T>> resultIterator,
+  private VisitFrame<K, T> visit(final K nodeKey, final T node,
       final Map<K, KeyWithNodes<K, T>> visited) {
 
-    KeyWithNodes<K, T> keyWithNodes = visited.get(nodeKey);
-    if (keyWithNodes == null) {
-      keyWithNodes = new KeyWithNodes<>(nodeKey);
-      visited.put(nodeKey, keyWithNodes);
-    }
-
+    KeyWithNodes<K, T> keyWithNodes = new KeyWithNodes<>(nodeKey);
     keyWithNodes.nodes.add(node);
-    resultIterator.add(keyWithNodes);
-
-    List<T> children = childResolver.apply(node);
-    if (children.isEmpty()) {
-      return;
-    }
-
-    ListIterator<T> iterator = children.listIterator(children.size());
-    while (iterator.hasPrevious()) {
-      T childNode = iterator.previous();
-      K childNodeKey = keyGenerator.apply(childNode);
-      if (!visited.containsKey(childNodeKey)) {
-        flattenRecurse(childNodeKey, childNode, resultIterator, visited);
-        iterateBackToBeAfterNode(resultIterator, nodeKey);
-      }
-    }
-  }
-
-  private void iterateBackToBeAfterNode(final ListIterator<KeyWithNodes<K, T>> resultIterator,
-      final K nodeKey) {
-    KeyWithNodes<K, T> currentKeyWithNodes = resultIterator.previous();
-    while (currentKeyWithNodes != null && !currentKeyWithNodes.key.equals(nodeKey)) {
-      currentKeyWithNodes = resultIterator.previous();
-    }
-    resultIterator.next();
+    visited.put(nodeKey, keyWithNodes);
+    return new VisitFrame<>(keyWithNodes, childResolver.apply(node));
   }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.e4.plugin.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Collects the folders that were written by maven executions and refreshes them at once. Only the
+ * collected folders are refreshed instead of the whole projects and a folder is skipped if one of
+ * its ancestors is refreshed, too. The collector is thread safe, so parallel maven executions can
+ * add their folders to the same instance.
+ */
+public class ResourceRefresher {
+
+  private final Set<IPath> locations = new LinkedHashSet<>();
+
+  /**
+   * Adds a folder that should be refreshed.
+   *
+   * @param folder
+   *          The folder on the file system. Folders that are not in the workspace are ignored when
+   *          the refresh happens.
+   */
+  public synchronized void addFolder(final File folder) {
+    locations.add(Path.fromOSString(folder.getAbsolutePath()));
+  }
+
+  private List<IPath> coalesceLocations() {
+    List<IPath> result = new ArrayList<>();
+    for (IPath location : locations) {
+      boolean ancestorRefreshed = false;
+      for (Iterator<IPath> iterator = locations.iterator(); !ancestorRefreshed
+          && iterator.hasNext();) {
+        IPath otherLocation = iterator.next();
+        ancestorRefreshed = !otherLocation.equals(location) && otherLocation.isPrefixOf(location);
+      }
+      if (!ancestorRefreshed) {
+        result.add(location);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Refreshes the collected folders and forgets them. If a folder is not known by the workspace
+   * yet, the closest ancestor that is known is refreshed.
+   *
+   * @param monitor
+   *          The monitor to show progress.
+   * @throws CoreException
+   *           if the refresh fails.
+   */
+  public void refresh(final IProgressMonitor monitor) throws CoreException {
+    List<IPath> locationsToRefresh;
+    synchronized (this) {
+      locationsToRefresh = coalesceLocations();
+      locations.clear();
+    }
+
+    IWorkspaceRoot workspaceRoot = ResourcesPlugin.getWorkspace().getRoot();
+    for (IPath location : locationsToRefresh) {
+      IContainer container = workspaceRoot.getContainerForLocation(location);
+      while (container != null && container.getType() != IResource.ROOT
+          && !container.exists()) {
+        container = container.getParent();
+      }
+      if (container != null && container.getType() != IResource.ROOT) {
+        container.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+      }
+    }
+  }
+}